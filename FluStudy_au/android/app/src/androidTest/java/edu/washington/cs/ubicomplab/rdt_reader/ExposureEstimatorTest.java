@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the exposure decisions and sampled histogram of {@link ExposureEstimator}. Needs OpenCV's
+ * native library, so it runs on a device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExposureEstimatorTest {
+    private static final int BINS = 256;
+    private static final int FRAME_WIDTH = 1280;
+    private static final int FRAME_HEIGHT = 720;
+    // The default viewfinder of a 1280x720 frame
+    private static final Rect VIEWFINDER = new Rect(256, 306, 768, 108);
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        assertTrue(OpenCVLoader.initDebug());
+    }
+
+    @Test
+    public void darkFrameIsUnderExposed() {
+        assertEquals(ImageProcessor.ExposureResult.UNDER_EXPOSED, estimate(createGradient(20, 100), null));
+    }
+
+    @Test
+    public void midToneFrameIsNormal() {
+        assertEquals(ImageProcessor.ExposureResult.NORMAL, estimate(createGradient(60, 220), null));
+    }
+
+    @Test
+    public void clippedHighlightIsOverExposed() {
+        // A glare covering about an eighth of the viewfinder, as from the flash on the strip
+        Rect glare = new Rect(VIEWFINDER.x, VIEWFINDER.y, VIEWFINDER.width / 8, VIEWFINDER.height);
+        assertEquals(ImageProcessor.ExposureResult.OVER_EXPOSED, estimate(createGradient(60, 220), glare));
+    }
+
+    @Test
+    public void regionIsClampedToTheFrame() {
+        int stride = Constants.EXPOSURE_SAMPLE_STRIDE;
+        Constants.EXPOSURE_SAMPLE_STRIDE = 1;
+        try {
+            Mat greyMat = createFrame(new Random(7));
+            Rect outside = new Rect(FRAME_WIDTH - 100, FRAME_HEIGHT - 50, 300, 200);
+            ExposureEstimator estimator = new ExposureEstimator();
+            estimator.update(greyMat, outside);
+
+            // Without sampling, the estimate is exactly the histogram of the part inside the frame
+            double[] expected = histogram(greyMat, new Rect(FRAME_WIDTH - 100, FRAME_HEIGHT - 50, 100, 50));
+            greyMat.release();
+            for (int level = 0; level < BINS; level++) {
+                assertEquals("level " + level, expected[level], estimator.getFraction(level), 1e-9);
+            }
+        } finally {
+            Constants.EXPOSURE_SAMPLE_STRIDE = stride;
+        }
+    }
+
+    /**
+     * Estimates the exposure of a single frame, which is released afterwards
+     * @param greyMat: the frame
+     * @param glare: a region to clip to white first, or null
+     */
+    private static ImageProcessor.ExposureResult estimate(Mat greyMat, Rect glare) {
+        if (glare != null) {
+            Mat region = greyMat.submat(glare);
+            region.setTo(new Scalar(255));
+            region.release();
+        }
+        ImageProcessor.ExposureResult result = new ExposureEstimator().update(greyMat, VIEWFINDER);
+        greyMat.release();
+        return result;
+    }
+
+    /**
+     * Creates a frame whose luma rises linearly from left to right, like an unevenly lit scene
+     */
+    private static Mat createGradient(int left, int right) {
+        byte[] data = new byte[FRAME_WIDTH * FRAME_HEIGHT];
+        for (int x = 0; x < FRAME_WIDTH; x++) {
+            byte value = (byte) (left + (right - left) * x / (FRAME_WIDTH - 1));
+            for (int y = 0; y < FRAME_HEIGHT; y++)
+                data[y * FRAME_WIDTH + x] = value;
+        }
+        Mat greyMat = new Mat(FRAME_HEIGHT, FRAME_WIDTH, CvType.CV_8UC1);
+        greyMat.put(0, 0, data);
+        return greyMat;
+    }
+
+    /**
+     * Creates a frame of mid-grey noise with a few clipped highlights, so that both the common
+     * and the rare levels are covered
+     */
+    private static Mat createFrame(Random random) {
+        byte[] data = new byte[FRAME_WIDTH * FRAME_HEIGHT];
+        for (int i = 0; i < data.length; i++) {
+            int value = random.nextInt(100) == 0 ? 255 : (int) (110 + 30 * random.nextGaussian());
+            data[i] = (byte) Math.max(0, Math.min(255, value));
+        }
+        Mat greyMat = new Mat(FRAME_HEIGHT, FRAME_WIDTH, CvType.CV_8UC1);
+        greyMat.put(0, 0, data);
+        return greyMat;
+    }
+
+    private static double[] histogram(Mat greyMat, Rect roi) {
+        byte[] row = new byte[roi.width];
+        double[] fractions = new double[BINS];
+        for (int y = roi.y; y < roi.y + roi.height; y++) {
+            greyMat.get(y, roi.x, row);
+            for (byte value : row)
+                fractions[value & 0xFF]++;
+        }
+        for (int level = 0; level < BINS; level++)
+            fractions[level] /= roi.area();
+        return fractions;
+    }
+}
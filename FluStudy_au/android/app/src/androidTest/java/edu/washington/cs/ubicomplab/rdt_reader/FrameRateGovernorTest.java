@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.android.Utils;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives {@link FrameRateGovernor} with the results of captureRDT on frames with and without the
+ * reference strip, checking that it goes idle without a strip and aligns again once one is
+ * detected. Needs OpenCV's native library and the app's reference image, so it runs on a device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FrameRateGovernorTest {
+    private static final int FRAME_WIDTH = 1280;
+    private static final int FRAME_HEIGHT = 720;
+    private static final long IDLE_TIMEOUT_MS = 200;
+
+    private static ImageProcessor processor;
+    private static Mat refImg;
+
+    private long mIdleTimeout;
+    private boolean mEarlyExit;
+
+    @BeforeClass
+    public static void loadProcessor() {
+        assertTrue(OpenCVLoader.initDebug());
+        Context context = InstrumentationRegistry.getTargetContext();
+        processor = new ImageProcessor(context, RdtProfile.QUICKVUE);
+        Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), RdtProfile.QUICKVUE.refDrawable);
+        refImg = new Mat();
+        Utils.bitmapToMat(bitmap, refImg);
+        bitmap.recycle();
+    }
+
+    @Before
+    public void setUp() {
+        mIdleTimeout = Constants.GOVERNOR_IDLE_TIMEOUT_MS;
+        mEarlyExit = Constants.EARLY_EXIT_ENABLED;
+        Constants.GOVERNOR_IDLE_TIMEOUT_MS = IDLE_TIMEOUT_MS;
+        // Detect the strip even if the synthetic frame fails the exposure or sharpness gate
+        Constants.EARLY_EXIT_ENABLED = false;
+        processor.resetTracking();
+    }
+
+    @After
+    public void tearDown() {
+        Constants.GOVERNOR_IDLE_TIMEOUT_MS = mIdleTimeout;
+        Constants.EARLY_EXIT_ENABLED = mEarlyExit;
+    }
+
+    @Test
+    public void stripInViewKeepsTheGovernorAligning() throws InterruptedException {
+        FrameRateGovernor governor = new FrameRateGovernor(null);
+        assertTrue(governor.isAligning());
+
+        // A strip in view keeps the governor aligning past the timeout
+        for (int i = 0; i < 3; i++) {
+            assertTrue(process(governor, createFrame(true)));
+            Thread.sleep(IDLE_TIMEOUT_MS / 2);
+        }
+        assertTrue(governor.isAligning());
+
+        // Without a strip it goes idle once the timeout has passed
+        assertFalse(process(governor, createFrame(false)));
+        Thread.sleep(IDLE_TIMEOUT_MS + 50);
+        assertFalse(process(governor, createFrame(false)));
+        assertFalse(governor.isAligning());
+
+        // and aligns again as soon as a strip is detected
+        assertTrue(process(governor, createFrame(true)));
+        assertTrue(governor.isAligning());
+    }
+
+    /**
+     * Runs captureRDT on a frame, which is released afterwards, and hands the result to the
+     * governor like FramePipeline does
+     * @return whether captureRDT detected the strip
+     */
+    private static boolean process(FrameRateGovernor governor, Mat rgbaMat) {
+        Mat greyMat = new Mat();
+        Imgproc.cvtColor(rgbaMat, greyMat, Imgproc.COLOR_RGBA2GRAY);
+        long startTime = System.nanoTime();
+        ImageProcessor.CaptureResult captureResult = processor.captureRDT(rgbaMat, greyMat);
+        governor.onFrameProcessed(System.nanoTime() - startTime, captureResult.testStripDetected);
+        boolean detected = captureResult.testStripDetected;
+        captureResult.release();
+        greyMat.release();
+        rgbaMat.release();
+        return detected;
+    }
+
+    /**
+     * Creates a grey frame, with the reference strip filling the width of the viewfinder if asked
+     */
+    private static Mat createFrame(boolean withStrip) {
+        Mat rgbaMat = new Mat(FRAME_HEIGHT, FRAME_WIDTH, CvType.CV_8UC4, new Scalar(128, 128, 128, 255));
+        if (withStrip) {
+            Rect viewfinder = processor.getViewfinderRect(rgbaMat);
+            int height = (int) Math.round(refImg.rows() * (double) viewfinder.width / refImg.cols());
+            Rect strip = new Rect(viewfinder.x, (FRAME_HEIGHT - height) / 2, viewfinder.width, height);
+            Mat region = rgbaMat.submat(strip);
+            Imgproc.resize(refImg, region, new Size(strip.width, strip.height), 0, 0, Imgproc.INTER_AREA);
+            region.release();
+        }
+        return rgbaMat;
+    }
+}
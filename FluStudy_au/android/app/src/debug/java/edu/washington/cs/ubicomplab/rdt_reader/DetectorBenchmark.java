@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import android.os.Debug;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs every {@link ImageProcessor.Detector} over a labelled corpus of strip photos and reports
+ * recall, IoU with the labelled boundary, latency and memory per detector, so the detector in
+ * {@link Constants#RDT_DETECTOR} can be chosen from data for each device.
+ *
+ * The corpus directory holds the photos and a {@link #CORPUS_LABELS_FILE} with one line
+ * per photo: its file name followed by the x,y coordinates of the strip's four corners in order
+ * around the strip, or only the file name if there is no strip in the photo. Photos without a
+ * line are skipped. A strip counts as found when the detected boundary overlaps the labelled one
+ * by at least {@link #CORPUS_IOU_THRESHOLD}.
+ *
+ * Launched like {@link FrameReplayBenchmark}:
+ *
+ *   app_process / edu.washington.cs.ubicomplab.rdt_reader.DetectorBenchmark \
+ *       /sdcard/rdt_corpus /sdcard/quickvue_ref_v5.jpg
+ */
+public class DetectorBenchmark {
+    private static final double CORPUS_IOU_THRESHOLD = 0.5;
+    private static final String CORPUS_LABELS_FILE = "labels.csv";
+
+    private final ImageProcessor mProcessor;
+    private final FrameProfiler mProfiler = new FrameProfiler();
+    private final Map<ImageProcessor.Detector, Stats> mStats = new HashMap<>();
+
+    private static class Stats {
+        int positiveCount = 0;
+        int foundCount = 0;
+        double iouSum = 0;
+        int negativeCount = 0;
+        int falsePositiveCount = 0;
+        long allocCountSum = 0;
+        long nativeBytesSum = 0;
+        long nativeBytesMax = 0;
+        int runCount = 0;
+    }
+
+    public DetectorBenchmark(ImageProcessor processor) {
+        mProcessor = processor;
+        for (ImageProcessor.Detector detector : ImageProcessor.Detector.values())
+            mStats.put(detector, new Stats());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: DetectorBenchmark <corpus dir> <reference image>");
+            System.exit(1);
+        }
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        Mat refImg = FrameReplayBenchmark.loadFrame(new File(args[1]));
+        DetectorBenchmark benchmark = new DetectorBenchmark(new ImageProcessor(refImg));
+        refImg.release();
+
+        File dir = new File(args[0]);
+        Map<String, MatOfPoint2f> labels = loadLabels(new File(dir, CORPUS_LABELS_FILE));
+        for (File file : FrameReplayBenchmark.listFrames(dir)) {
+            if (labels.containsKey(file.getName()))
+                benchmark.run(file, labels.get(file.getName()));
+        }
+        for (MatOfPoint2f label : labels.values())
+            label.release();
+        benchmark.printReport();
+    }
+
+    /**
+     * Reads the labelled boundaries of a corpus
+     * @param file: the labels file
+     * @return the boundary for each file name, which is empty if the photo has no strip
+     */
+    static Map<String, MatOfPoint2f> loadLabels(File file) throws IOException {
+        Map<String, MatOfPoint2f> labels = new HashMap<>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] fields = line.split(",");
+                if (fields.length != 1 && fields.length != 9)
+                    throw new IOException("Malformed label: " + line);
+
+                Point[] corners = new Point[(fields.length - 1) / 2];
+                for (int i = 0; i < corners.length; i++)
+                    corners[i] = new Point(Double.parseDouble(fields[2*i + 1].trim()),
+                            Double.parseDouble(fields[2*i + 2].trim()));
+                labels.put(fields[0].trim(), new MatOfPoint2f(corners));
+            }
+        } finally {
+            reader.close();
+        }
+        return labels;
+    }
+
+    /**
+     * Runs every detector on one photo
+     * @param file: the photo
+     * @param label: the labelled boundary, empty if the photo has no strip
+     */
+    public void run(File file, MatOfPoint2f label) throws IOException {
+        Mat rgbaMat = FrameReplayBenchmark.loadFrame(file);
+        if (rgbaMat.empty()) {
+            rgbaMat.release();
+            return;
+        }
+        Mat greyMat = new Mat();
+        Imgproc.cvtColor(rgbaMat, greyMat, Imgproc.COLOR_RGBA2GRAY);
+        rgbaMat.release();
+
+        for (ImageProcessor.Detector detector : ImageProcessor.Detector.values()) {
+            Stats stats = mStats.get(detector);
+
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocCount();
+            long nativeBytes = Debug.getNativeHeapAllocatedSize();
+
+            long startTime = System.nanoTime();
+            MatOfPoint2f boundary = mProcessor.detectRDT(detector, greyMat);
+            mProfiler.record(detector.name(), System.nanoTime() - startTime);
+
+            long nativeGrowth = Debug.getNativeHeapAllocatedSize() - nativeBytes;
+            stats.allocCountSum += Debug.getThreadAllocCount();
+            stats.nativeBytesSum += nativeGrowth;
+            stats.nativeBytesMax = Math.max(stats.nativeBytesMax, nativeGrowth);
+            stats.runCount++;
+            Debug.stopAllocCounting();
+
+            boolean detected = boundary.rows() == 4;
+            if (label.empty()) {
+                stats.negativeCount++;
+                if (detected)
+                    stats.falsePositiveCount++;
+            } else {
+                stats.positiveCount++;
+                double iou = detected ? computeIoU(boundary, label) : 0;
+                stats.iouSum += iou;
+                if (iou >= CORPUS_IOU_THRESHOLD)
+                    stats.foundCount++;
+            }
+            boundary.release();
+        }
+
+        greyMat.release();
+    }
+
+    /**
+     * Computes the intersection over union of two convex quadrilaterals
+     * @param a: the first quadrilateral
+     * @param b: the second quadrilateral
+     * @return the IoU between 0 and 1
+     */
+    static double computeIoU(MatOfPoint2f a, MatOfPoint2f b) {
+        MatOfPoint2f intersection = new MatOfPoint2f();
+        double intersectionArea = Math.max(0, Imgproc.intersectConvexConvex(a, b, intersection, true));
+        intersection.release();
+        double unionArea = Imgproc.contourArea(a) + Imgproc.contourArea(b) - intersectionArea;
+        return unionArea <= 0 ? 0 : intersectionArea / unionArea;
+    }
+
+    public void printReport() {
+        System.out.println(String.format(Locale.US, "%-8s %8s %8s %8s %8s %10s %10s %12s %14s %14s",
+                "detector", "strips", "recall", "mean IoU", "FP rate", "p50 (ms)", "p90 (ms)",
+                "allocs/run", "native mean", "native max"));
+        for (ImageProcessor.Detector detector : ImageProcessor.Detector.values()) {
+            Stats stats = mStats.get(detector);
+            System.out.println(String.format(Locale.US, "%-8s %8d %8.3f %8.3f %8.3f %10.2f %10.2f %12.1f %14.1f %14d",
+                    detector.name(), stats.positiveCount,
+                    stats.positiveCount == 0 ? 0 : (double) stats.foundCount / stats.positiveCount,
+                    stats.positiveCount == 0 ? 0 : stats.iouSum / stats.positiveCount,
+                    stats.negativeCount == 0 ? 0 : (double) stats.falsePositiveCount / stats.negativeCount,
+                    mProfiler.getPercentile(detector.name(), 50) / 1e6,
+                    mProfiler.getPercentile(detector.name(), 90) / 1e6,
+                    stats.runCount == 0 ? 0 : (double) stats.allocCountSum / stats.runCount,
+                    stats.runCount == 0 ? 0 : (double) stats.nativeBytesSum / stats.runCount,
+                    stats.nativeBytesMax));
+        }
+        System.out.println(String.format(Locale.US, "live native Mats after run: %d",
+                mProcessor.getLiveMatCount()));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Compares each {@link ImageProcessor.FiducialMethod} against the k-means detector over a
+ * directory of recorded perspective-corrected strips, i.e. the resultMat of passing captures.
+ * Agreement counts the strips where both methods either find or reject the fiducials, and IoU
+ * compares the result windows where both find them.
+ *
+ * Launched like {@link FrameReplayBenchmark}:
+ *
+ *   app_process / edu.washington.cs.ubicomplab.rdt_reader.FiducialBenchmark \
+ *       /sdcard/rdt_strips /sdcard/quickvue_ref_v5.jpg
+ */
+public class FiducialBenchmark {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: FiducialBenchmark <strips dir> <reference image>");
+            System.exit(1);
+        }
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        Mat refImg = FrameReplayBenchmark.loadFrame(new File(args[1]));
+        ImageProcessor processor = new ImageProcessor(refImg);
+        refImg.release();
+
+        ImageProcessor.FiducialMethod[] methods = ImageProcessor.FiducialMethod.values();
+        FrameProfiler profiler = new FrameProfiler();
+        int[] foundCounts = new int[methods.length];
+        int[] agreeCounts = new int[methods.length];
+        int[] overlapCounts = new int[methods.length];
+        double[] iouSums = new double[methods.length];
+        int stripCount = 0;
+
+        for (File file : FrameReplayBenchmark.listFrames(new File(args[0]))) {
+            Mat strip = FrameReplayBenchmark.loadFrame(file);
+            if (strip.empty()) {
+                strip.release();
+                continue;
+            }
+            stripCount++;
+
+            Rect[] windows = new Rect[methods.length];
+            for (int i = 0; i < methods.length; i++) {
+                long startTime = System.nanoTime();
+                windows[i] = processor.checkFiducial(strip, methods[i]);
+                profiler.record(methods[i].name(), System.nanoTime() - startTime);
+            }
+
+            Rect reference = windows[ImageProcessor.FiducialMethod.KMEANS.ordinal()];
+            for (int i = 0; i < methods.length; i++) {
+                boolean found = windows[i].area() > 0;
+                if (found)
+                    foundCounts[i]++;
+                if (found == reference.area() > 0)
+                    agreeCounts[i]++;
+                if (found && reference.area() > 0) {
+                    overlapCounts[i]++;
+                    iouSums[i] += iou(windows[i], reference);
+                }
+            }
+            strip.release();
+        }
+
+        System.out.println(String.format(Locale.US, "strips: %d", stripCount));
+        System.out.println(String.format(Locale.US, "%-12s %10s %10s %8s %10s %8s",
+                "method", "p50 (ms)", "p90 (ms)", "found", "agreement", "IoU"));
+        for (int i = 0; i < methods.length; i++) {
+            System.out.println(String.format(Locale.US, "%-12s %10.2f %10.2f %8d %10.3f %8.3f", methods[i].name(),
+                    profiler.getPercentile(methods[i].name(), 50) / 1e6,
+                    profiler.getPercentile(methods[i].name(), 90) / 1e6,
+                    foundCounts[i],
+                    stripCount == 0 ? 0 : (double) agreeCounts[i] / stripCount,
+                    overlapCounts[i] == 0 ? 0 : iouSums[i] / overlapCounts[i]));
+        }
+    }
+
+    private static double iou(Rect a, Rect b) {
+        double width = Math.min(a.x + a.width, b.x + b.width) - Math.max(a.x, b.x);
+        double height = Math.min(a.y + a.height, b.y + b.height) - Math.max(a.y, b.y);
+        double intersection = width > 0 && height > 0 ? width * height : 0;
+        double union = a.area() + b.area() - intersection;
+        return union <= 0 ? 0 : intersection / union;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import android.os.Debug;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replays a directory of recorded frames through {@link ImageProcessor#captureRDT(Mat)} and
+ * {@link ImageProcessor#interpretResult(ImageProcessor.CaptureResult)} without a camera or
+ * an Activity, and prints per-stage latency percentiles and per-frame allocation counts.
+ *
+ * Frames are either RGBA/BGR images (.png, .jpg) or raw I420 dumps named
+ * {@code <name>_<width>x<height>.yuv}; the other benchmarks in this package read their inputs the
+ * same way. They live in the debug source set, so they are left out of release builds. They have
+ * no UI and are launched headlessly on a device from a debug build with app_process:
+ *
+ *   adb shell CLASSPATH=$(pm path org.auderenow.fluathome_au | cut -d: -f2) \
+ *       LD_LIBRARY_PATH=/data/app/org.auderenow.fluathome_au-1/lib/arm64 \
+ *       app_process / edu.washington.cs.ubicomplab.rdt_reader.FrameReplayBenchmark \
+ *       /sdcard/rdt_frames /sdcard/quickvue_ref_v5.jpg [iterations]
+ */
+public class FrameReplayBenchmark {
+    private static final String STAGE_CAPTURE = "captureRDT";
+    private static final String STAGE_INTERPRET = "interpretResult";
+    private static final Pattern YUV_NAME = Pattern.compile(".*_(\\d+)x(\\d+)\\.yuv$");
+
+    private final ImageProcessor mProcessor;
+    private final FrameProfiler mProfiler = new FrameProfiler();
+    private final List<Long> mAllocCounts = new ArrayList<>();
+    private final List<Long> mNativeBytes = new ArrayList<>();
+    private int mFrameCount = 0;
+    private int mPassedCount = 0;
+
+    public FrameReplayBenchmark(ImageProcessor processor) {
+        mProcessor = processor;
+        mProcessor.setProfiler(mProfiler);
+        mProcessor.setLeakCheck(true);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: FrameReplayBenchmark <frames dir> <reference image> [iterations]");
+            System.exit(1);
+        }
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        Mat refImg = loadFrame(new File(args[1]));
+        FrameReplayBenchmark benchmark = new FrameReplayBenchmark(new ImageProcessor(refImg));
+        refImg.release();
+
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        File[] frames = listFrames(new File(args[0]));
+        for (int i = 0; i < iterations; i++) {
+            for (File frame : frames)
+                benchmark.replay(frame);
+        }
+        benchmark.printReport();
+    }
+
+    /**
+     * Lists the frames in a directory in a stable order
+     * @param dir: the directory of recorded frames
+     * @return the frame files sorted by name
+     */
+    static File[] listFrames(File dir) throws IOException {
+        File[] frames = dir.listFiles();
+        if (frames == null)
+            throw new IOException("Unable to list frames in " + dir);
+        Arrays.sort(frames);
+        return frames;
+    }
+
+    /**
+     * Decodes a recorded frame into an RGBA Mat, the same format ImageQualityView provides
+     * @param file: an image file or a raw I420 dump
+     * @return the RGBA frame, or an empty Mat if the file is not a frame
+     */
+    static Mat loadFrame(File file) throws IOException {
+        Mat rgbaMat = new Mat();
+        Matcher yuvName = YUV_NAME.matcher(file.getName());
+        if (yuvName.matches()) {
+            int width = Integer.parseInt(yuvName.group(1));
+            int height = Integer.parseInt(yuvName.group(2));
+            byte[] data = readFile(file);
+            Mat yuvMat = new Mat(height + height / 2, width, CvType.CV_8UC1);
+            yuvMat.put(0, 0, data);
+            Imgproc.cvtColor(yuvMat, rgbaMat, Imgproc.COLOR_YUV2RGBA_I420);
+            yuvMat.release();
+        } else {
+            Mat bgrMat = Imgcodecs.imread(file.getAbsolutePath(), Imgcodecs.IMREAD_COLOR);
+            if (!bgrMat.empty())
+                Imgproc.cvtColor(bgrMat, rgbaMat, Imgproc.COLOR_BGR2RGBA);
+            bgrMat.release();
+        }
+        return rgbaMat;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0)
+                    break;
+                offset += read;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    /**
+     * Runs one frame through capture and, if all checks pass, interpretation
+     * @param file: the recorded frame
+     */
+    public void replay(File file) throws IOException {
+        Mat rgbaMat = loadFrame(file);
+        if (rgbaMat.empty()) {
+            rgbaMat.release();
+            return;
+        }
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        long nativeBytes = Debug.getNativeHeapAllocatedSize();
+
+        long startTime = System.nanoTime();
+        ImageProcessor.CaptureResult captureResult = mProcessor.captureRDT(rgbaMat);
+        mProfiler.record(STAGE_CAPTURE, System.nanoTime() - startTime);
+
+        ImageProcessor.InterpretationResult interpretationResult = null;
+        if (captureResult.allChecksPassed) {
+            startTime = System.nanoTime();
+            interpretationResult = mProcessor.interpretResult(captureResult);
+            mProfiler.record(STAGE_INTERPRET, System.nanoTime() - startTime);
+            mPassedCount++;
+        }
+
+        mAllocCounts.add((long) Debug.getThreadAllocCount());
+        mNativeBytes.add(Debug.getNativeHeapAllocatedSize() - nativeBytes);
+        Debug.stopAllocCounting();
+        mFrameCount++;
+
+        // Release resources
+        captureResult.release();
+        if (interpretationResult != null)
+            interpretationResult.resultMat.release();
+        rgbaMat.release();
+    }
+
+    public void printReport() {
+        System.out.println(String.format(Locale.US, "frames: %d, passed: %d", mFrameCount, mPassedCount));
+        System.out.println(String.format(Locale.US, "%-16s %8s %10s %10s %10s %10s",
+                "stage", "count", "p50 (ms)", "p90 (ms)", "p99 (ms)", "max (ms)"));
+        for (String stage : mProfiler.getStages()) {
+            System.out.println(String.format(Locale.US, "%-16s %8d %10.2f %10.2f %10.2f %10.2f",
+                    stage, mProfiler.getCount(stage),
+                    mProfiler.getPercentile(stage, 50) / 1e6,
+                    mProfiler.getPercentile(stage, 90) / 1e6,
+                    mProfiler.getPercentile(stage, 99) / 1e6,
+                    mProfiler.getPercentile(stage, 100) / 1e6));
+        }
+        System.out.println(String.format(Locale.US, "java allocations/frame: mean %.1f, max %d",
+                mean(mAllocCounts), max(mAllocCounts)));
+        System.out.println(String.format(Locale.US, "native heap growth/frame (bytes): mean %.1f, max %d",
+                mean(mNativeBytes), max(mNativeBytes)));
+        System.out.println(String.format(Locale.US, "live native Mats after replay: %d",
+                mProcessor.getLiveMatCount()));
+        System.out.println(String.format(Locale.US, "%-16s %8s %10s", "gate", "reached", "rejected"));
+        for (ImageProcessor.QualityGate gate : ImageProcessor.QualityGate.values()) {
+            System.out.println(String.format(Locale.US, "%-16s %8d %10.3f", gate.name(),
+                    mProcessor.getGateCheckedCount(gate), mProcessor.getGateRejectionRate(gate)));
+        }
+    }
+
+    private static double mean(List<Long> values) {
+        if (values.isEmpty())
+            return 0;
+        double sum = 0;
+        for (long value : values)
+            sum += value;
+        return sum / values.size();
+    }
+
+    private static long max(List<Long> values) {
+        long max = 0;
+        for (long value : values)
+            max = Math.max(max, value);
+        return max;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import org.opencv.core.Core;
+import org.opencv.core.DMatch;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDMatch;
+import org.opencv.core.MatOfKeyPoint;
+import org.opencv.features2d.BFMatcher;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static edu.washington.cs.ubicomplab.rdt_reader.Constants.FRAME_IMAGE_SCALE;
+
+/**
+ * Compares the latency and recall of each {@link ReferenceMatcher.Type} over a directory of
+ * recorded frames. Recall is measured against an exhaustive frame-to-reference search with the
+ * same ratio test, i.e. the matches an exact index would return. Agreement is the fraction of the
+ * production {@link ReferenceMatcher.Type#BRUTE_FORCE} matches, which search reference-to-frame,
+ * that each type also returns, so a type's effect on the boundaries can be judged before it
+ * replaces the default.
+ *
+ * Launched like {@link FrameReplayBenchmark}:
+ *
+ *   app_process / edu.washington.cs.ubicomplab.rdt_reader.MatcherBenchmark \
+ *       /sdcard/rdt_frames /sdcard/quickvue_ref_v5.jpg
+ */
+public class MatcherBenchmark {
+    private static final String STAGE_EXACT = "exact";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: MatcherBenchmark <frames dir> <reference image>");
+            System.exit(1);
+        }
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        Mat refImg = FrameReplayBenchmark.loadFrame(new File(args[1]));
+        ImageProcessor processor = new ImageProcessor(refImg);
+        refImg.release();
+        Mat refDescriptor = processor.getSiftRefDescriptor();
+
+        ReferenceMatcher.Type[] types = ReferenceMatcher.Type.values();
+        ReferenceMatcher[] matchers = new ReferenceMatcher[types.length];
+        for (int i = 0; i < types.length; i++)
+            matchers[i] = ReferenceMatcher.create(types[i], refDescriptor);
+        BFMatcher exactMatcher = BFMatcher.create(BFMatcher.BRUTEFORCE, false);
+
+        FrameProfiler profiler = new FrameProfiler();
+        long[] matchCounts = new long[types.length];
+        long[] foundCounts = new long[types.length];
+        long[] agreedCounts = new long[types.length];
+        long bruteForceCount = 0;
+        long exactCount = 0;
+        int frameCount = 0;
+
+        LumaPyramid pyramid = new LumaPyramid(null);
+        Mat greyMat = new Mat();
+        MatOfKeyPoint keypoints = new MatOfKeyPoint();
+        Mat descriptor = new Mat();
+        Mat mask = new Mat();
+        for (File file : FrameReplayBenchmark.listFrames(new File(args[0]))) {
+            Mat rgbaMat = FrameReplayBenchmark.loadFrame(file);
+            if (rgbaMat.empty()) {
+                rgbaMat.release();
+                continue;
+            }
+
+            // Extract frame features with the same scale, crop and mask as detectRDTWithSIFT
+            Imgproc.cvtColor(rgbaMat, greyMat, Imgproc.COLOR_RGBA2GRAY);
+            rgbaMat.release();
+            pyramid.reset(greyMat);
+            processor.extractSiftFeatures(pyramid, FRAME_IMAGE_SCALE, keypoints, descriptor);
+            frameCount++;
+
+            if (descriptor.rows() >= 2) {
+                // Ground truth: exhaustive search in the same direction as the index
+                long startTime = System.nanoTime();
+                List<MatOfDMatch> knnMatches = new ArrayList<>();
+                exactMatcher.knnMatch(descriptor, refDescriptor, knnMatches, 2, mask, false);
+                Set<Long> exact = toPairs(ReferenceMatcher.ratioTest(knnMatches, true));
+                profiler.record(STAGE_EXACT, System.nanoTime() - startTime);
+                exactCount += exact.size();
+
+                List<Set<Long>> pairs = new ArrayList<>();
+                Set<Long> bruteForce = null;
+                for (int i = 0; i < matchers.length; i++) {
+                    startTime = System.nanoTime();
+                    List<DMatch> matches = matchers[i].match(descriptor);
+                    profiler.record(types[i].name(), System.nanoTime() - startTime);
+                    matchCounts[i] += matches.size();
+                    pairs.add(toPairs(matches));
+                    for (long pair : pairs.get(i)) {
+                        if (exact.contains(pair))
+                            foundCounts[i]++;
+                    }
+                    if (types[i] == ReferenceMatcher.Type.BRUTE_FORCE)
+                        bruteForce = pairs.get(i);
+                }
+                if (bruteForce != null) {
+                    bruteForceCount += bruteForce.size();
+                    for (int i = 0; i < matchers.length; i++) {
+                        for (long pair : pairs.get(i)) {
+                            if (bruteForce.contains(pair))
+                                agreedCounts[i]++;
+                        }
+                    }
+                }
+            }
+        }
+        pyramid.release();
+        greyMat.release();
+        keypoints.release();
+        descriptor.release();
+        mask.release();
+        processor.releaseThreadScratch();
+
+        System.out.println(String.format(Locale.US, "frames: %d, reference descriptors: %d",
+                frameCount, refDescriptor.rows()));
+        System.out.println(String.format(Locale.US, "%-12s %10s %10s %12s %8s %10s",
+                "matcher", "p50 (ms)", "p90 (ms)", "matches/frm", "recall", "agreement"));
+        System.out.println(String.format(Locale.US, "%-12s %10.2f %10.2f %12.1f %8s %10s", STAGE_EXACT,
+                profiler.getPercentile(STAGE_EXACT, 50) / 1e6, profiler.getPercentile(STAGE_EXACT, 90) / 1e6,
+                frameCount == 0 ? 0 : (double) exactCount / frameCount, "-", "-"));
+        for (int i = 0; i < types.length; i++) {
+            System.out.println(String.format(Locale.US, "%-12s %10.2f %10.2f %12.1f %8.3f %10.3f", types[i].name(),
+                    profiler.getPercentile(types[i].name(), 50) / 1e6,
+                    profiler.getPercentile(types[i].name(), 90) / 1e6,
+                    frameCount == 0 ? 0 : (double) matchCounts[i] / frameCount,
+                    exactCount == 0 ? 0 : (double) foundCounts[i] / exactCount,
+                    bruteForceCount == 0 ? 0 : (double) agreedCounts[i] / bruteForceCount));
+            matchers[i].release();
+        }
+    }
+
+    private static Set<Long> toPairs(List<DMatch> matches) {
+        Set<Long> pairs = new HashSet<>();
+        for (DMatch m : matches)
+            pairs.add(((long) m.queryIdx << 32) | m.trainIdx);
+        return pairs;
+    }
+}
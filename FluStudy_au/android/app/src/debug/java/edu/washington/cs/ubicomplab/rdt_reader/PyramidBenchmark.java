@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static edu.washington.cs.ubicomplab.rdt_reader.Constants.*;
+
+/**
+ * Measures the sharpness check on every {@link LumaPyramid} level over a directory of recorded
+ * frames. Agreement counts the frames where a level reaches the same decision as the
+ * full-resolution frame, which is what {@link Constants#PYRAMID_MAX_LEVEL} should be chosen from.
+ * The last rows compare the sampled {@link ExposureEstimator} with the full-resolution histogram
+ * exposure check it replaced in the same way.
+ *
+ * Launched like {@link FrameReplayBenchmark}:
+ *
+ *   app_process / edu.washington.cs.ubicomplab.rdt_reader.PyramidBenchmark \
+ *       /sdcard/rdt_frames /sdcard/quickvue_ref_v5.jpg
+ */
+public class PyramidBenchmark {
+    private static final String EXPOSURE = "exposure";
+    private static final String SHARPNESS = "sharpness";
+    private static final String ESTIMATOR = "estimator";
+    private static final int HIST_SIZE = 256;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: PyramidBenchmark <frames dir> <reference image>");
+            System.exit(1);
+        }
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        Mat refImg = FrameReplayBenchmark.loadFrame(new File(args[1]));
+        ImageProcessor processor = new ImageProcessor(refImg);
+        refImg.release();
+
+        int levels = Constants.PYRAMID_MAX_LEVEL + 1;
+        FrameProfiler profiler = new FrameProfiler();
+        int[] sharpnessAgreeCounts = new int[levels];
+        int estimatorAgreeCount = 0;
+        int sharpnessLevelSum = 0;
+        ExposureEstimator estimator = new ExposureEstimator();
+        int frameCount = 0;
+
+        LumaPyramid pyramid = new LumaPyramid(null);
+        Mat greyMat = new Mat();
+        for (File file : FrameReplayBenchmark.listFrames(new File(args[0]))) {
+            Mat rgbaMat = FrameReplayBenchmark.loadFrame(file);
+            if (rgbaMat.empty()) {
+                rgbaMat.release();
+                continue;
+            }
+            frameCount++;
+            Imgproc.cvtColor(rgbaMat, greyMat, Imgproc.COLOR_RGBA2GRAY);
+            rgbaMat.release();
+
+            // Build every level up front so the timings only cover the checks
+            pyramid.reset(greyMat);
+            pyramid.getLevel(Constants.PYRAMID_MAX_LEVEL);
+            sharpnessLevelSum += processor.getSharpnessLevel(greyMat);
+
+            boolean[] sharpness = new boolean[levels];
+            for (int level = 0; level < levels; level++) {
+                long startTime = System.nanoTime();
+                sharpness[level] = processor.checkSharpness(pyramid, level);
+                profiler.record(SHARPNESS + level, System.nanoTime() - startTime);
+            }
+            for (int level = 0; level < levels; level++) {
+                if (sharpness[level] == sharpness[0])
+                    sharpnessAgreeCounts[level]++;
+            }
+
+            long startTime = System.nanoTime();
+            ImageProcessor.ExposureResult exposure = checkBrightness(greyMat);
+            profiler.record(EXPOSURE, System.nanoTime() - startTime);
+
+            startTime = System.nanoTime();
+            ImageProcessor.ExposureResult estimate = estimator.update(greyMat, processor.getViewfinderRect(greyMat));
+            profiler.record(ESTIMATOR, System.nanoTime() - startTime);
+            if (estimate == exposure)
+                estimatorAgreeCount++;
+        }
+        pyramid.release();
+        greyMat.release();
+        processor.releaseThreadScratch();
+
+        System.out.println(String.format(Locale.US, "frames: %d, mean sharpness level: %.2f", frameCount,
+                frameCount == 0 ? 0 : (double) sharpnessLevelSum / frameCount));
+        System.out.println(String.format(Locale.US, "%-9s %10s %10s", "level", "time (ms)", "agreement"));
+        for (int level = 0; level < levels; level++) {
+            System.out.println(String.format(Locale.US, "%-9d %10.2f %10.3f", level,
+                    profiler.getPercentile(SHARPNESS + level, 50) / 1e6,
+                    frameCount == 0 ? 0 : (double) sharpnessAgreeCounts[level] / frameCount));
+        }
+        System.out.println(String.format(Locale.US, "%-9s %10.2f %10s", EXPOSURE,
+                profiler.getPercentile(EXPOSURE, 50) / 1e6, "-"));
+        System.out.println(String.format(Locale.US, "%-9s %10.2f %10.3f", ESTIMATOR,
+                profiler.getPercentile(ESTIMATOR, 50) / 1e6,
+                frameCount == 0 ? 0 : (double) estimatorAgreeCount / frameCount));
+    }
+
+    /**
+     * Determines if the full-resolution frame is sufficiently exposed from its whole histogram,
+     * which the reader did before the {@link ExposureEstimator}
+     * @param greyMat: the luma of the frame
+     * @return exposureResult: an ExposureResult enum value that can be {NORMAL,
+     * OVER_EXPOSED, UNDER_EXPOSED}
+     */
+    private static ImageProcessor.ExposureResult checkBrightness(Mat greyMat) {
+        Mat hist = new Mat();
+        Mat mask = new Mat();
+        MatOfInt channels = new MatOfInt(0);
+        MatOfInt histSize = new MatOfInt(HIST_SIZE);
+        MatOfFloat ranges = new MatOfFloat(0f, 256f);
+        Imgproc.calcHist(Arrays.asList(greyMat), channels, mask, hist, histSize, ranges);
+        mask.release();
+        channels.release();
+        histSize.release();
+        ranges.release();
+
+        // Normalize the histogram so that its largest bin is half the frame height
+        Core.normalize(hist, hist, greyMat.rows() / 2.0, 0, Core.NORM_INF);
+        float[] histogram = new float[HIST_SIZE];
+        hist.get(0, 0, histogram);
+        hist.release();
+
+        // Calculate brightest value
+        int maxWhite = 0;
+        for (int i = histogram.length - 1; i >= 0; i--) {
+            if (histogram[i] > 0) {
+                maxWhite = i;
+                break;
+            }
+        }
+
+        // Compute amount of clipping
+        float clippingCount = histogram[histogram.length - 1];
+
+        if (maxWhite >= OVER_EXP_THRESHOLD && clippingCount > OVER_EXP_WHITE_COUNT)
+            return ImageProcessor.ExposureResult.OVER_EXPOSED;
+        else if (maxWhite < UNDER_EXP_THRESHOLD)
+            return ImageProcessor.ExposureResult.UNDER_EXPOSED;
+        else
+            return ImageProcessor.ExposureResult.NORMAL;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import org.opencv.calib3d.Calib3d;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.core.TermCriteria;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.Video;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static edu.washington.cs.ubicomplab.rdt_reader.Constants.*;
+import static org.opencv.core.Core.perspectiveTransform;
+
+/**
+ * Follows a previously detected RDT boundary across consecutive frames with sparse
+ * Lucas-Kanade optical flow, so that full SIFT detection is only needed when tracking
+ * confidence drops or the track gets too old.
+ */
+public class BoundaryTracker {
+    private final double mScale;
+    private final Mat mPrevMat = new Mat();
+    private final Mat mCurrMat = new Mat();
+    private final MatOfPoint2f mPrevPoints = new MatOfPoint2f();
+    private final MatOfPoint2f mBoundary = new MatOfPoint2f();
+    private int mInitialPointCount = 0;
+    private int mTrackedFrames = 0;
+    private long mLastUpdateTime = 0;
+    private double mConfidence = 0;
+
+    /**
+     * @param scale: the factor frames are downsampled by before tracking
+     */
+    public BoundaryTracker(double scale) {
+        mScale = scale;
+    }
+
+    /**
+     * @return whether there is a boundary to track from
+     */
+    public boolean isTracking() {
+        return mInitialPointCount > 0;
+    }
+
+    /**
+     * @return the fraction of the initial feature points still supporting the last tracked boundary
+     */
+    public double getConfidence() {
+        return mConfidence;
+    }
+
+    /**
+     * Starts a new track from a boundary found by full detection
+     * @param greyMat: the full-resolution grayscale frame the boundary was detected in
+     * @param boundary: the detected boundary
+     */
+    public void initialize(Mat greyMat, MatOfPoint2f boundary) {
+        Imgproc.resize(greyMat, mPrevMat, new Size(), mScale, mScale, Imgproc.INTER_LINEAR);
+
+        // Only pick features on the RDT itself so the background does not drive the motion
+        Mat mask = new Mat(mPrevMat.size(), CvType.CV_8U, Scalar.all(0));
+        MatOfPoint polygon = new MatOfPoint();
+        List<Point> scaled = new ArrayList<>();
+        for (Point p : boundary.toArray())
+            scaled.add(new Point(p.x * mScale, p.y * mScale));
+        polygon.fromList(scaled);
+        Imgproc.fillConvexPoly(mask, polygon, Scalar.all(255));
+
+        MatOfPoint corners = new MatOfPoint();
+        Imgproc.goodFeaturesToTrack(mPrevMat, corners, TRACKING_MAX_POINTS, 0.01, 5, mask);
+        Point[] points = corners.toArray();
+        mPrevPoints.fromArray(points);
+        boundary.copyTo(mBoundary);
+        mInitialPointCount = points.length < TRACKING_MIN_POINTS ? 0 : points.length;
+        mTrackedFrames = 0;
+        mConfidence = 1.0;
+        mLastUpdateTime = System.currentTimeMillis();
+
+        // Release resources
+        mask.release();
+        polygon.release();
+        corners.release();
+    }
+
+    /**
+     * Estimates the boundary in a new frame from the motion of the tracked points
+     * @param greyMat: the full-resolution grayscale frame
+     * @return the tracked boundary, or null if full detection is needed
+     */
+    public MatOfPoint2f track(Mat greyMat) {
+        if (!isTracking())
+            return null;
+        if (mTrackedFrames >= TRACKING_MAX_FRAMES ||
+                System.currentTimeMillis() - mLastUpdateTime > TRACKING_MAX_AGE_MS) {
+            reset();
+            return null;
+        }
+
+        Imgproc.resize(greyMat, mCurrMat, new Size(), mScale, mScale, Imgproc.INTER_LINEAR);
+        MatOfPoint2f nextPoints = new MatOfPoint2f();
+        MatOfByte status = new MatOfByte();
+        MatOfFloat err = new MatOfFloat();
+        Video.calcOpticalFlowPyrLK(mPrevMat, mCurrMat, mPrevPoints, nextPoints, status, err,
+                new Size(21, 21), 3,
+                new TermCriteria(TermCriteria.COUNT + TermCriteria.EPS, 20, 0.03), 0, 1e-4);
+
+        // Keep only the points that were found again
+        Point[] prev = mPrevPoints.toArray();
+        Point[] next = nextPoints.toArray();
+        byte[] found = status.toArray();
+        List<Point> prevFound = new ArrayList<>();
+        List<Point> nextFound = new ArrayList<>();
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] != 0) {
+                prevFound.add(prev[i]);
+                nextFound.add(next[i]);
+            }
+        }
+        nextPoints.release();
+        status.release();
+        err.release();
+
+        MatOfPoint2f boundary = null;
+        if (nextFound.size() >= TRACKING_MIN_POINTS)
+            boundary = estimateBoundary(prevFound, nextFound);
+
+        if (boundary == null) {
+            reset();
+            return null;
+        }
+
+        // The current frame becomes the reference for the next one
+        mCurrMat.copyTo(mPrevMat);
+        boundary.copyTo(mBoundary);
+        mTrackedFrames++;
+        mLastUpdateTime = System.currentTimeMillis();
+        return boundary;
+    }
+
+    /**
+     * Fits a homography to the point motion and applies it to the previous boundary
+     * @return the new boundary, or null if too few points agree on the motion
+     */
+    private MatOfPoint2f estimateBoundary(List<Point> prevFound, List<Point> nextFound) {
+        MatOfPoint2f prevMat = new MatOfPoint2f();
+        MatOfPoint2f nextMat = new MatOfPoint2f();
+        prevMat.fromList(prevFound);
+        nextMat.fromList(nextFound);
+        Mat inlierMask = new Mat();
+        Mat H = Calib3d.findHomography(prevMat, nextMat, Calib3d.RANSAC, TRACKING_RANSAC_THRESHOLD, inlierMask);
+
+        MatOfPoint2f boundary = null;
+        if (H.cols() >= 3 && H.rows() >= 3) {
+            // Confidence is measured against the points the track started with
+            List<Point> inliers = new ArrayList<>();
+            for (int i = 0; i < nextFound.size(); i++) {
+                if (inlierMask.get(i, 0)[0] != 0)
+                    inliers.add(nextFound.get(i));
+            }
+            mConfidence = mInitialPointCount == 0 ? 0 : (double) inliers.size() / mInitialPointCount;
+
+            if (mConfidence >= TRACKING_MIN_CONFIDENCE && inliers.size() >= TRACKING_MIN_POINTS) {
+                MatOfPoint2f scaledBoundary = new MatOfPoint2f();
+                List<Point> corners = new ArrayList<>();
+                for (Point p : mBoundary.toArray())
+                    corners.add(new Point(p.x * mScale, p.y * mScale));
+                scaledBoundary.fromList(corners);
+                MatOfPoint2f movedBoundary = new MatOfPoint2f();
+                perspectiveTransform(scaledBoundary, movedBoundary, H);
+
+                List<Point> moved = new ArrayList<>();
+                for (Point p : movedBoundary.toArray())
+                    moved.add(new Point(p.x / mScale, p.y / mScale));
+                boundary = new MatOfPoint2f();
+                boundary.fromList(moved);
+                mPrevPoints.fromList(inliers);
+
+                scaledBoundary.release();
+                movedBoundary.release();
+            }
+        }
+
+        // Release resources
+        prevMat.release();
+        nextMat.release();
+        inlierMask.release();
+        H.release();
+        return boundary;
+    }
+
+    /**
+     * Drops the current track so the next frame goes through full detection
+     */
+    public void reset() {
+        mInitialPointCount = 0;
+        mTrackedFrames = 0;
+        mConfidence = 0;
+    }
+
+    public void release() {
+        reset();
+        mPrevMat.release();
+        mCurrMat.release();
+        mPrevPoints.release();
+        mBoundary.release();
+    }
+}
@@ -84,8 +84,69 @@ public final class Constants {
     public static int ANGLE_THRESHOLD = 10;
     public static int FIDUCIAL_DISTANCE = 610;
     public static int FIDUCIAL_COUNT = 2;
+    public static int FIDUCIAL_DILATE_SIZE = 20;
+    public static double FIDUCIAL_DARK_FRACTION = 0.01;
+    public static double FIDUCIAL_DARK_MARGIN = 20.0;
+    public static ImageProcessor.FiducialMethod FIDUCIAL_METHOD = ImageProcessor.FiducialMethod.KMEANS;
 
     public static double ENHANCING_THRESHOLD = 4.50;
     public static double REF_IMAGE_SCALE = 1.0;
     public static double FRAME_IMAGE_SCALE = 0.5;
+
+    public static ImageProcessor.Detector RDT_DETECTOR = ImageProcessor.Detector.SIFT;
+    public static boolean TRACKING_ENABLED = true;
+    public static int TRACKING_MAX_POINTS = 100;
+    public static int TRACKING_MIN_POINTS = 15;
+    public static double TRACKING_MIN_CONFIDENCE = 0.5;
+    public static double TRACKING_RANSAC_THRESHOLD = 3.0;
+    public static int TRACKING_MAX_FRAMES = 15;
+    public static long TRACKING_MAX_AGE_MS = 500;
+
+    public static ReferenceMatcher.Type SIFT_MATCHER_TYPE = ReferenceMatcher.Type.BRUTE_FORCE;
+
+    public static String REF_FEATURE_CACHE_FILE = "rdt_ref_features.bin";
+
+    public static boolean MAT_LEAK_CHECK = false;
+
+    public static int CONSENSUS_MIN_FRAMES = 3;
+    public static int CONSENSUS_MAX_FRAMES = 7;
+    public static int CONSENSUS_STABLE_FRAMES = 3;
+    public static long CONSENSUS_MAX_LATENCY_MS = 1500;
+
+    public static int PIPELINE_METRICS_INTERVAL = 100;
+
+    public static boolean EARLY_EXIT_ENABLED = true;
+    public static ImageProcessor.QualityGate[] QUALITY_GATE_ORDER = {
+            ImageProcessor.QualityGate.EXPOSURE, ImageProcessor.QualityGate.SHARPNESS};
+
+    public static int PYRAMID_MAX_LEVEL = 3;
+    public static int EXPOSURE_SAMPLE_STRIDE = 4;
+    public static double EXPOSURE_DECAY = 0.5;
+    public static double EXPOSURE_MIN_FRACTION = 0.001;
+
+    public static boolean GOVERNOR_ENABLED = true;
+    public static long GOVERNOR_ALIGNING_INTERVAL_MS = 0;
+    public static long GOVERNOR_IDLE_INTERVAL_MS = 300;
+    public static long GOVERNOR_IDLE_TIMEOUT_MS = 3000;
+    public static long GOVERNOR_DEVICE_POLL_MS = 5000;
+    public static long GOVERNOR_SCALE_PERIOD_MS = 1000;
+    public static double GOVERNOR_MAX_LATENCY_MS = 150;
+    public static double GOVERNOR_MIN_IMAGE_SCALE = 0.3;
+    public static double GOVERNOR_SCALE_STEP = 0.05;
+    public static double GOVERNOR_WARM_DUTY_CYCLE = 0.6;
+    public static double GOVERNOR_HOT_DUTY_CYCLE = 0.3;
+    public static float GOVERNOR_WARM_TEMPERATURE = 40;
+    public static float GOVERNOR_HOT_TEMPERATURE = 45;
+    public static float GOVERNOR_LOW_BATTERY_LEVEL = 0.15f;
+
+    public static int RANSAC_MIN_THRESHOLD = 4;
+    public static int RANSAC_MAX_THRESHOLD = 8;
+
+    public static long METRICS_SNAPSHOT_INTERVAL_MS = 10000;
+
+    public static String ENCODED_IMAGE_DIR = "rdt_captures";
+    public static int ENCODER_JPEG_QUALITY = 95;
+    public static int ENCODER_PNG_COMPRESSION = 1;
+
+    public static int PROFILE_LOAD_THREADS = 2;
 }
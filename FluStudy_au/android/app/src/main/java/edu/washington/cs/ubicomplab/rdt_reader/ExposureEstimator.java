@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import static edu.washington.cs.ubicomplab.rdt_reader.Constants.*;
+
+/**
+ * Estimates the exposure of the viewfinder from a grid of every
+ * {@link Constants#EXPOSURE_SAMPLE_STRIDE}th pixel in every {@link Constants#EXPOSURE_SAMPLE_STRIDE}th
+ * row, kept in a luma histogram that decays by {@link Constants#EXPOSURE_DECAY} per frame, instead
+ * of histogramming the whole frame.
+ *
+ * The samples are never more than the stride apart, so any bright or dark region at least
+ * {@link Constants#EXPOSURE_SAMPLE_STRIDE} pixels wide and high is always seen, and a change in
+ * exposure takes about 1/(1 - {@link Constants#EXPOSURE_DECAY}) frames to show. The grid is fixed
+ * rather than random, so random-sampling bounds such as Hoeffding's do not apply to the bin
+ * fractions, e.g. for a scene that repeats at the stride.
+ */
+public class ExposureEstimator {
+    private static final int BINS = 256;
+
+    private final double[] mHistogram = new double[BINS];
+    private final long[] mFrameCounts = new long[BINS];
+    private final Mat mSampleMat = new Mat();
+    private byte[] mSampleData;
+    private boolean mEmpty = true;
+
+    /**
+     * Samples a frame into the running histogram and checks the exposure
+     * @param greyMat: the full-resolution luma of the frame
+     * @param roi: the part of the frame to sample, e.g. the viewfinder, clamped to the frame
+     * @return an ExposureResult enum value that can be {NORMAL, OVER_EXPOSED, UNDER_EXPOSED}
+     */
+    public synchronized ImageProcessor.ExposureResult update(Mat greyMat, Rect roi) {
+        int stride = Math.max(1, EXPOSURE_SAMPLE_STRIDE);
+        int left = Math.max(roi.x, 0);
+        int top = Math.max(roi.y, 0);
+        int right = Math.min(roi.x + roi.width, greyMat.cols());
+        int bottom = Math.min(roi.y + roi.height, greyMat.rows());
+        if (right <= left || bottom <= top)
+            return ImageProcessor.ExposureResult.NORMAL;
+
+        // Pick the samples natively and copy them out with a single call
+        int cols = (right - left + stride - 1) / stride;
+        int rows = (bottom - top + stride - 1) / stride;
+        Mat region = greyMat.submat(top, bottom, left, right);
+        Imgproc.resize(region, mSampleMat, new Size(cols, rows), 0, 0, Imgproc.INTER_NEAREST);
+        region.release();
+        int samples = rows * cols;
+        if (mSampleData == null || mSampleData.length != samples)
+            mSampleData = new byte[samples];
+        mSampleMat.get(0, 0, mSampleData);
+
+        for (int i = 0; i < BINS; i++)
+            mFrameCounts[i] = 0;
+        for (int i = 0; i < samples; i++)
+            mFrameCounts[mSampleData[i] & 0xFF]++;
+
+        // Decay the previous frames into the histogram of fractions
+        double decay = mEmpty ? 0 : EXPOSURE_DECAY;
+        for (int i = 0; i < BINS; i++)
+            mHistogram[i] = decay * mHistogram[i] + (1 - decay) * mFrameCounts[i] / (double) samples;
+        mEmpty = false;
+
+        return getExposure(greyMat.rows());
+    }
+
+    /**
+     * @param level: a luma level between 0 and 255
+     * @return the running fraction of the samples at that level
+     */
+    synchronized double getFraction(int level) {
+        return mHistogram[level];
+    }
+
+    /**
+     * Applies the thresholds of the full-frame histogram check to the running histogram
+     * @param frameHeight: the height of the full-resolution frame, which the full-frame check
+     *                   normalizes its histogram to
+     */
+    private ImageProcessor.ExposureResult getExposure(int frameHeight) {
+        int maxWhite = 0;
+        double maxFraction = 0;
+        for (int i = 0; i < BINS; i++) {
+            if (mHistogram[i] >= EXPOSURE_MIN_FRACTION)
+                maxWhite = i;
+            maxFraction = Math.max(maxFraction, mHistogram[i]);
+        }
+
+        // The full-frame check scales the histogram so that its largest bin is half the frame height
+        double clippingCount = maxFraction == 0 ? 0 : mHistogram[BINS - 1] / maxFraction * frameHeight / 2;
+
+        if (maxWhite >= OVER_EXP_THRESHOLD && clippingCount > OVER_EXP_WHITE_COUNT)
+            return ImageProcessor.ExposureResult.OVER_EXPOSED;
+        else if (maxWhite < UNDER_EXP_THRESHOLD)
+            return ImageProcessor.ExposureResult.UNDER_EXPOSED;
+        else
+            return ImageProcessor.ExposureResult.NORMAL;
+    }
+
+    /**
+     * Forgets the previous frames, e.g. when a new capture session starts
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < BINS; i++)
+            mHistogram[i] = 0;
+        mEmpty = true;
+    }
+}
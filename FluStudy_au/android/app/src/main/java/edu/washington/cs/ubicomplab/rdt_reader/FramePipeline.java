@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import android.media.Image;
+import android.util.Log;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static edu.washington.cs.ubicomplab.rdt_reader.Constants.*;
+
+/**
+ * Processes camera frames in four stages, each on its own worker thread: conversion, quality
+ * checks, RDT detection, and interpretation. Stages hand frames to each other through
+ * {@link LatestSlot}s, so a slow stage only ever sees the newest frame and the stages before it
+ * keep working on the next ones, e.g. frame N+1 is converted while frame N is being detected.
+ *
+ * Every hand-off counts the frames it received and dropped, and every stage records its latency
+ * into a {@link MetricsRegistry} histogram, which is logged every
+ * {@link Constants#PIPELINE_METRICS_INTERVAL} frames. An optional
+ * {@link FrameRateGovernor} decides which camera frames enter the pipeline at all.
+ */
+public class FramePipeline {
+    private static final String TAG = "FramePipeline";
+
+    public static final String STAGE_CONVERT = "convert";
+    public static final String STAGE_QUALITY = "quality";
+    public static final String STAGE_DETECT = "detect";
+    public static final String STAGE_INTERPRET = "interpret";
+
+    private static final int MAX_FREE_FRAMES = 4;
+
+    public interface Listener {
+        /**
+         * Called on the detection worker for every detected frame, e.g. to update the feedback.
+         * The capture result must not be kept, since it is passed on to interpretation.
+         */
+        void onFrameDetected(ImageProcessor.CaptureResult captureResult);
+
+        /**
+         * Called on the interpretation worker, which takes over releasing the capture result's Mats
+         */
+        void onFrameInterpreting(ImageProcessor.CaptureResult captureResult);
+    }
+
+    private static class Frame {
+        final Mat yuvMat = new Mat();
+        final LumaPyramid pyramid = new LumaPyramid(null);
+        Mat greyMat;
+        Mat rgbaMat;
+        ImageProcessor.QualityResult quality;
+
+        void release() {
+            pyramid.release();
+            yuvMat.release();
+        }
+    }
+
+    private final ImageProcessor mProcessor;
+    private final Listener mListener;
+    private final YuvFrameConverter mConverter = new YuvFrameConverter();
+    private final MetricsRegistry.Histogram mConvertLatency;
+    private final MetricsRegistry.Histogram mQualityLatency;
+    private final MetricsRegistry.Histogram mDetectLatency;
+    private final MetricsRegistry.Histogram mInterpretLatency;
+    private final ArrayDeque<Frame> mFreeFrames = new ArrayDeque<>();
+    private final FrameRateGovernor mGovernor;
+
+    private final LatestSlot<Image> mImageSlot = new LatestSlot<>(STAGE_CONVERT);
+    private final LatestSlot<Frame> mQualitySlot = new LatestSlot<>(STAGE_QUALITY);
+    private final LatestSlot<Frame> mDetectSlot = new LatestSlot<>(STAGE_DETECT);
+    private final LatestSlot<ImageProcessor.CaptureResult> mInterpretSlot = new LatestSlot<>(STAGE_INTERPRET);
+
+    private volatile Thread[] mWorkers;
+    private volatile boolean mPaused = false;
+    private final AtomicBoolean mResetExposure = new AtomicBoolean(false);
+    private final AtomicBoolean mResetBoundary = new AtomicBoolean(false);
+    private long mDetectedCount = 0;
+
+    /**
+     * @param processor: the processor that runs the checks
+     * @param listener: receives the detected frames
+     * @param governor: decides which frames to process, or null to process every frame
+     */
+    public FramePipeline(ImageProcessor processor, Listener listener, FrameRateGovernor governor) {
+        mProcessor = processor;
+        mListener = listener;
+        mGovernor = governor;
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        mConvertLatency = metrics.histogram(MetricsRegistry.PIPELINE_CONVERT);
+        mQualityLatency = metrics.histogram(MetricsRegistry.PIPELINE_QUALITY);
+        mDetectLatency = metrics.histogram(MetricsRegistry.PIPELINE_DETECT);
+        mInterpretLatency = metrics.histogram(MetricsRegistry.PIPELINE_INTERPRET);
+    }
+
+    /**
+     * Starts the stage workers if they are not running already
+     */
+    public synchronized void start() {
+        if (mWorkers != null)
+            return;
+        mPaused = false;
+        // No worker is running yet, so the processor can be reset right away
+        mResetExposure.set(false);
+        mResetBoundary.set(false);
+        mProcessor.resetTracking();
+        if (mGovernor != null)
+            mGovernor.reset();
+        mConvertLatency.reset();
+        mQualityLatency.reset();
+        mDetectLatency.reset();
+        mInterpretLatency.reset();
+        mWorkers = new Thread[] {
+                new Worker(STAGE_CONVERT) {
+                    @Override
+                    void step() throws InterruptedException {
+                        convert(mImageSlot.take());
+                    }
+                },
+                new Worker(STAGE_QUALITY) {
+                    @Override
+                    void step() throws InterruptedException {
+                        checkQuality(mQualitySlot.take());
+                    }
+                },
+                new Worker(STAGE_DETECT) {
+                    @Override
+                    void step() throws InterruptedException {
+                        detect(mDetectSlot.take());
+                    }
+                },
+                new Worker(STAGE_INTERPRET) {
+                    @Override
+                    void step() throws InterruptedException {
+                        ImageProcessor.CaptureResult captureResult = mInterpretSlot.take();
+                        long startTime = System.nanoTime();
+                        mListener.onFrameInterpreting(captureResult);
+                        mInterpretLatency.record(System.nanoTime() - startTime);
+                    }
+                }
+        };
+        for (Thread worker : mWorkers)
+            worker.start();
+    }
+
+    /**
+     * Stops the stage workers and releases every frame still in the pipeline
+     */
+    public void stop() {
+        Thread[] workers;
+        synchronized (this) {
+            workers = mWorkers;
+            mWorkers = null;
+        }
+        if (workers == null)
+            return;
+
+        for (Thread worker : workers)
+            worker.interrupt();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        flush();
+        synchronized (mFreeFrames) {
+            for (Frame frame : mFreeFrames)
+                frame.release();
+            mFreeFrames.clear();
+        }
+        logMetrics();
+    }
+
+    /**
+     * Stops accepting frames, e.g. once a result has been reported, and drops the waiting ones.
+     * Frames that a worker is already processing still finish.
+     */
+    public void pause() {
+        mPaused = true;
+        flush();
+    }
+
+    /**
+     * Makes the processor forget the tracked RDT and the exposure of past frames, e.g. once a
+     * result has been reported. The quality and detection workers reset their own state before
+     * their next frame, so a frame that is still being detected cannot bring the old RDT back.
+     */
+    public void resetTracking() {
+        mResetExposure.set(true);
+        mResetBoundary.set(true);
+    }
+
+    public void resume() {
+        mPaused = false;
+    }
+
+    public boolean isPaused() {
+        return mPaused;
+    }
+
+    /**
+     * Hands a camera frame to the pipeline, which takes over closing it
+     * @param image: the camera frame
+     */
+    public void submit(Image image) {
+        if (mPaused || mWorkers == null || (mGovernor != null && !mGovernor.shouldProcess())) {
+            image.close();
+            return;
+        }
+        Image dropped = mImageSlot.offer(image);
+        if (dropped != null)
+            dropped.close();
+    }
+
+    private void flush() {
+        Image image = mImageSlot.clear();
+        if (image != null)
+            image.close();
+        recycle(mQualitySlot.clear());
+        recycle(mDetectSlot.clear());
+        releaseCaptureResult(mInterpretSlot.clear());
+    }
+
+    private void convert(Image image) {
+        long startTime = System.nanoTime();
+        Frame frame;
+        synchronized (mFreeFrames) {
+            frame = mFreeFrames.isEmpty() ? new Frame() : mFreeFrames.poll();
+        }
+        mConverter.convert(image, frame.yuvMat);
+        image.close();
+        frame.greyMat = YuvFrameConverter.toGrey(frame.yuvMat);
+        frame.pyramid.reset(frame.greyMat);
+        frame.rgbaMat = YuvFrameConverter.toRGBA(frame.yuvMat);
+        mConvertLatency.record(System.nanoTime() - startTime);
+        recycle(mQualitySlot.offer(frame));
+    }
+
+    private void checkQuality(Frame frame) {
+        if (mResetExposure.getAndSet(false))
+            mProcessor.resetExposure();
+        long startTime = System.nanoTime();
+        frame.quality = mProcessor.checkQuality(frame.pyramid);
+        mQualityLatency.record(System.nanoTime() - startTime);
+        recycle(mDetectSlot.offer(frame));
+    }
+
+    private void detect(Frame frame) {
+        if (mResetBoundary.getAndSet(false))
+            mProcessor.resetBoundaryTracking();
+        long startTime = System.nanoTime();
+        double frameScale = mGovernor == null ? FRAME_IMAGE_SCALE : mGovernor.getImageScale();
+        ImageProcessor.CaptureResult captureResult = mProcessor.captureRDT(frame.rgbaMat, frame.pyramid,
+                frame.quality, frameScale);
+        long latency = System.nanoTime() - startTime;
+        mDetectLatency.record(latency);
+        if (mGovernor != null)
+            mGovernor.onFrameProcessed(latency, captureResult.testStripDetected);
+
+        // The capture result keeps its own references to the RGBA data
+        recycle(frame);
+        mListener.onFrameDetected(captureResult);
+        releaseCaptureResult(mInterpretSlot.offer(captureResult));
+
+        if (++mDetectedCount % PIPELINE_METRICS_INTERVAL == 0)
+            logMetrics();
+    }
+
+    private void recycle(Frame frame) {
+        if (frame == null)
+            return;
+        if (frame.greyMat != null)
+            frame.greyMat.release();
+        if (frame.rgbaMat != null)
+            frame.rgbaMat.release();
+        frame.greyMat = null;
+        frame.rgbaMat = null;
+        frame.quality = null;
+        synchronized (mFreeFrames) {
+            if (mFreeFrames.size() < MAX_FREE_FRAMES)
+                mFreeFrames.add(frame);
+            else
+                frame.release();
+        }
+    }
+
+    private static void releaseCaptureResult(ImageProcessor.CaptureResult captureResult) {
+        if (captureResult != null)
+            captureResult.release();
+    }
+
+    /**
+     * @return one line per stage with its hand-off counters and latency percentiles
+     */
+    public String getMetrics() {
+        StringBuilder builder = new StringBuilder();
+        LatestSlot<?>[] slots = {mImageSlot, mQualitySlot, mDetectSlot, mInterpretSlot};
+        MetricsRegistry.Histogram[] latencies = {mConvertLatency, mQualityLatency, mDetectLatency, mInterpretLatency};
+        for (int i = 0; i < slots.length; i++) {
+            LatestSlot<?> slot = slots[i];
+            builder.append(String.format(Locale.US, "%s: depth %d, received %d, dropped %d, p50 %.1f ms, p90 %.1f ms\n",
+                    slot.getName(), slot.getDepth(), slot.getOfferedCount(), slot.getDroppedCount(),
+                    latencies[i].getPercentile(50) / 1e6,
+                    latencies[i].getPercentile(90) / 1e6));
+        }
+        if (mGovernor != null)
+            builder.append(mGovernor.getState()).append('\n');
+        return builder.toString();
+    }
+
+    private void logMetrics() {
+        Log.d(TAG, getMetrics());
+    }
+
+    /**
+     * Runs one stage until the pipeline is stopped
+     */
+    private abstract class Worker extends Thread {
+        Worker(String stage) {
+            super("FramePipeline-" + stage);
+        }
+
+        abstract void step() throws InterruptedException;
+
+        @Override
+        public void run() {
+            try {
+                while (!isInterrupted())
+                    step();
+            } catch (InterruptedException e) {
+                // Stopped by stop()
+            } finally {
+                mProcessor.releaseThreadScratch();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects latency samples for the named stages of the ImageProcessor pipeline
+ * and summarizes them as percentiles. Every sample is kept, so it is meant for the offline
+ * benchmarks; the field uses the bounded {@link MetricsRegistry} histograms instead.
+ */
+public class FrameProfiler {
+    public static final String STAGE_GRAYSCALE = "grayscale";
+    public static final String STAGE_BRIGHTNESS = "brightness";
+    public static final String STAGE_SHARPNESS = "sharpness";
+    public static final String STAGE_SIFT_DETECT = "siftDetect";
+    public static final String STAGE_TRACK = "track";
+    public static final String STAGE_FIDUCIAL = "fiducial";
+    public static final String STAGE_READ_LINE = "readLine";
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Map<String, Samples> mStages = new LinkedHashMap<>();
+
+    private static class Samples {
+        long[] values = new long[INITIAL_CAPACITY];
+        int count = 0;
+
+        void add(long value) {
+            if (count == values.length)
+                values = Arrays.copyOf(values, count * 2);
+            values[count++] = value;
+        }
+    }
+
+    /**
+     * Records a single latency sample for a stage
+     * @param stage: the name of the stage
+     * @param nanos: the time spent in the stage in nanoseconds
+     */
+    public synchronized void record(String stage, long nanos) {
+        Samples samples = mStages.get(stage);
+        if (samples == null) {
+            samples = new Samples();
+            mStages.put(stage, samples);
+        }
+        samples.add(nanos);
+    }
+
+    /**
+     * @return the stage names in the order they were first recorded
+     */
+    public synchronized String[] getStages() {
+        return mStages.keySet().toArray(new String[0]);
+    }
+
+    public synchronized int getCount(String stage) {
+        Samples samples = mStages.get(stage);
+        return samples == null ? 0 : samples.count;
+    }
+
+    /**
+     * Computes a latency percentile for a stage using the nearest-rank method
+     * @param stage: the name of the stage
+     * @param percentile: the percentile between 0 and 100
+     * @return the latency in nanoseconds, or 0 if the stage has no samples
+     */
+    public synchronized long getPercentile(String stage, double percentile) {
+        Samples samples = mStages.get(stage);
+        if (samples == null || samples.count == 0)
+            return 0;
+
+        long[] sorted = Arrays.copyOf(samples.values, samples.count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        rank = rank < 0 ? 0 : rank >= sorted.length ? sorted.length - 1 : rank;
+        return sorted[rank];
+    }
+
+    public synchronized void reset() {
+        mStages.clear();
+    }
+}
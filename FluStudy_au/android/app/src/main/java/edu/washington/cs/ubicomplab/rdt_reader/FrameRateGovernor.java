@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+
+import java.util.Locale;
+
+import static edu.washington.cs.ubicomplab.rdt_reader.Constants.*;
+
+/**
+ * Decides how often preview frames are processed and how far they are downsampled for SIFT.
+ * Frames are processed as fast as possible while a strip is in view, and only every
+ * {@link Constants#GOVERNOR_IDLE_INTERVAL_MS} once none has been detected for
+ * {@link Constants#GOVERNOR_IDLE_TIMEOUT_MS}.
+ *
+ * On top of that, the governor limits the fraction of time spent in captureRDT according to the
+ * device's thermal state, estimated from the battery temperature and power saving mode, and
+ * lowers the downsample factor while the device is warm or frames are too slow.
+ */
+public class FrameRateGovernor {
+    public enum ThermalState {NORMAL, WARM, HOT}
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private final Context mContext;
+
+    private long mLastSubmitTime = 0;
+    private long mLastDetectedTime;
+    private long mLastScaleChangeTime = 0;
+    private long mLastDevicePollTime = 0;
+    private double mLatencyMs = 0;
+    private double mImageScale = FRAME_IMAGE_SCALE;
+    private ThermalState mThermalState = ThermalState.NORMAL;
+
+    /**
+     * @param context: used to read the battery and power state, or null to ignore them
+     */
+    public FrameRateGovernor(Context context) {
+        mContext = context;
+        reset();
+    }
+
+    /**
+     * Starts over as if a strip had just been detected, e.g. for a new capture session
+     */
+    public synchronized void reset() {
+        mLastSubmitTime = 0;
+        mLastDetectedTime = now();
+        mLatencyMs = 0;
+        mImageScale = FRAME_IMAGE_SCALE;
+    }
+
+    /**
+     * Decides whether a new frame should be processed, counting it as submitted if so
+     * @return true if the frame should be processed, false if it should be dropped
+     */
+    public synchronized boolean shouldProcess() {
+        long time = now();
+        pollDeviceState(time);
+        if (time - mLastSubmitTime < getFrameInterval(time))
+            return false;
+        mLastSubmitTime = time;
+        return true;
+    }
+
+    /**
+     * Updates the governor with a processed frame
+     * @param latencyNanos: how long captureRDT took for the frame
+     * @param testStripDetected: whether the strip was found in the frame
+     */
+    public synchronized void onFrameProcessed(long latencyNanos, boolean testStripDetected) {
+        long time = now();
+        double latencyMs = latencyNanos / 1e6;
+        mLatencyMs = mLatencyMs == 0 ? latencyMs : mLatencyMs + LATENCY_SMOOTHING * (latencyMs - mLatencyMs);
+        if (testStripDetected)
+            mLastDetectedTime = time;
+
+        // Step the downsample factor at most once per period so each step can take effect
+        if (time - mLastScaleChangeTime < GOVERNOR_SCALE_PERIOD_MS)
+            return;
+        double scale = mImageScale;
+        if (mThermalState != ThermalState.NORMAL || mLatencyMs > GOVERNOR_MAX_LATENCY_MS)
+            scale = Math.max(GOVERNOR_MIN_IMAGE_SCALE, scale - GOVERNOR_SCALE_STEP);
+        else if (mLatencyMs < GOVERNOR_MAX_LATENCY_MS / 2)
+            scale = Math.min(FRAME_IMAGE_SCALE, scale + GOVERNOR_SCALE_STEP);
+        if (scale != mImageScale) {
+            mImageScale = scale;
+            mLastScaleChangeTime = time;
+        }
+    }
+
+    /**
+     * @return the factor frames should be downsampled by before SIFT detection
+     */
+    public synchronized double getImageScale() {
+        return mImageScale;
+    }
+
+    /**
+     * @return the current minimum time between processed frames in milliseconds
+     */
+    public synchronized long getFrameInterval() {
+        return getFrameInterval(now());
+    }
+
+    public synchronized ThermalState getThermalState() {
+        return mThermalState;
+    }
+
+    public synchronized boolean isAligning() {
+        return isAligning(now());
+    }
+
+    /**
+     * @return the governor's state in one line for logging
+     */
+    public synchronized String getState() {
+        long time = now();
+        return String.format(Locale.US, "governor: %s, %s, interval %d ms, latency %.1f ms, scale %.2f",
+                isAligning(time) ? "aligning" : "idle", mThermalState, getFrameInterval(time), mLatencyMs, mImageScale);
+    }
+
+    private boolean isAligning(long time) {
+        return time - mLastDetectedTime < GOVERNOR_IDLE_TIMEOUT_MS;
+    }
+
+    private long getFrameInterval(long time) {
+        long interval = isAligning(time) ? GOVERNOR_ALIGNING_INTERVAL_MS : GOVERNOR_IDLE_INTERVAL_MS;
+
+        // Leave enough time between frames to keep processing under the thermal duty cycle
+        double dutyCycle;
+        switch (mThermalState) {
+            case HOT:
+                dutyCycle = GOVERNOR_HOT_DUTY_CYCLE;
+                break;
+            case WARM:
+                dutyCycle = GOVERNOR_WARM_DUTY_CYCLE;
+                break;
+            default:
+                dutyCycle = 1.0;
+                break;
+        }
+        return Math.max(interval, (long) (mLatencyMs / dutyCycle));
+    }
+
+    private void pollDeviceState(long time) {
+        if (mContext == null || time - mLastDevicePollTime < GOVERNOR_DEVICE_POLL_MS)
+            return;
+        mLastDevicePollTime = time;
+
+        // The battery broadcast is sticky, so no receiver is needed to read the latest one
+        Intent battery = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        float temperature = 0;
+        float level = 1;
+        boolean charging = false;
+        if (battery != null) {
+            temperature = battery.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0) / 10f;
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+            level = scale > 0 ? battery.getIntExtra(BatteryManager.EXTRA_LEVEL, scale) / (float) scale : 1;
+            charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        }
+        PowerManager powerManager = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
+        boolean powerSave = powerManager != null && powerManager.isPowerSaveMode();
+
+        if (temperature >= GOVERNOR_HOT_TEMPERATURE)
+            mThermalState = ThermalState.HOT;
+        else if (temperature >= GOVERNOR_WARM_TEMPERATURE || powerSave ||
+                (!charging && level < GOVERNOR_LOW_BATTERY_LEVEL))
+            mThermalState = ThermalState.WARM;
+        else
+            mThermalState = ThermalState.NORMAL;
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.util.Locale;
+
+import static edu.washington.cs.ubicomplab.rdt_reader.Constants.*;
+
+/**
+ * Writes captured images to files on a dedicated worker thread, so the capture callback only has
+ * to hand over the Mats and the receiver only gets file URIs instead of encoded image data.
+ * The receiver owns the files and deletes them once nothing refers to them any more, including
+ * any it never took, e.g. by sweeping {@link #getDir()}.
+ */
+public class ImageEncoder {
+    private static final String TAG = "ImageEncoder";
+
+    public enum Format {
+        JPEG(".jpg"), PNG(".png");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    public interface Callback {
+        /**
+         * Called on the encoder thread once every image of a request has been written
+         * @param uris: a file URI per image in the order they were requested, or null where
+         *            writing the image failed
+         */
+        void onEncoded(String[] uris);
+    }
+
+    private final File mDir;
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private long mSequence = 0;
+
+    /**
+     * @param dir: the directory the images are written to, created if needed
+     */
+    public ImageEncoder(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * @return the directory the images are written to
+     */
+    public File getDir() {
+        return mDir;
+    }
+
+    /**
+     * Queues RGBA images for writing. The encoder keeps its own reference to each Mat's data, so
+     * the caller may release its Mats as soon as this returns.
+     * @param mats: the RGBA images, where null or empty images are skipped
+     * @param formats: the file format for each image
+     * @param callback: receives the file URIs
+     */
+    public synchronized void encode(Mat[] mats, final Format[] formats, final Callback callback) {
+        if (mThread == null) {
+            mThread = new HandlerThread(TAG);
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper());
+        }
+
+        final Mat[] refs = new Mat[mats.length];
+        for (int i = 0; i < mats.length; i++) {
+            if (mats[i] != null && !mats[i].empty())
+                refs[i] = mats[i].submat(0, mats[i].rows(), 0, mats[i].cols());
+        }
+        final long sequence = mSequence++;
+
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                String[] uris = new String[refs.length];
+                for (int i = 0; i < refs.length; i++) {
+                    if (refs[i] == null)
+                        continue;
+                    File file = new File(mDir, String.format(Locale.US, "capture-%d-%d-%d%s",
+                            System.currentTimeMillis(), sequence, i, formats[i].extension));
+                    if (write(refs[i], formats[i], file))
+                        uris[i] = Uri.fromFile(file).toString();
+                    refs[i].release();
+                }
+                callback.onEncoded(uris);
+            }
+        });
+    }
+
+    /**
+     * Finishes the queued images and stops the worker thread
+     */
+    public synchronized void shutdown() {
+        if (mThread != null) {
+            mThread.quitSafely();
+            mThread = null;
+            mHandler = null;
+        }
+    }
+
+    private boolean write(Mat rgbaMat, Format format, File file) {
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            Log.w(TAG, "Unable to create " + mDir);
+            return false;
+        }
+
+        // imwrite expects BGR channel order
+        Mat bgrMat = new Mat();
+        Imgproc.cvtColor(rgbaMat, bgrMat, Imgproc.COLOR_RGBA2BGR);
+        MatOfInt params = format == Format.JPEG ?
+                new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, ENCODER_JPEG_QUALITY) :
+                new MatOfInt(Imgcodecs.IMWRITE_PNG_COMPRESSION, ENCODER_PNG_COMPRESSION);
+        boolean written = Imgcodecs.imwrite(file.getAbsolutePath(), bgrMat, params);
+        bgrMat.release();
+        params.release();
+        if (!written)
+            Log.w(TAG, "Unable to write " + file);
+        return written;
+    }
+}
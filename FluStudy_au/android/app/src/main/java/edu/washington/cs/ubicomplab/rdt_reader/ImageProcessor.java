@@ -54,7 +54,16 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
-
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import host.exp.exponent.BuildConfig;
 import host.exp.exponent.R;
 
 import static edu.washington.cs.ubicomplab.rdt_reader.Constants.*;
@@ -83,24 +92,67 @@ import static org.opencv.imgproc.Imgproc.warpPerspective;
 
 public class ImageProcessor {
     private static String TAG = "ImageProcessor";
-    private static ImageProcessor instance = null;
+    private final RdtProfile mProfile;
     private BRISK mFeatureDetector;
     private BFMatcher mMatcher;
+    // Only available when the reference features were computed rather than loaded from cache
     private Mat mRefImg;
+    private Size mRefSize;
+    private MatOfPoint2f mRefCorners;
+    private MatOfPoint2f mWarpCorners;
+    private MatOfPoint2f mRefResultWindowCorners;
+    private Size mWarpSize;
     private Mat mRefDescriptor;
     private MatOfKeyPoint mRefKeypoints;
     private SIFT siftDetector;
-    private BFMatcher siftMatcher;
+    private ReferenceMatcher siftMatcher;
     private MatOfKeyPoint siftRefKeypoints;
     private Mat siftRefDescriptor;
     private double refImgSharpness = Double.MIN_VALUE;
+    private BoundaryTracker mBoundaryTracker = new BoundaryTracker(FRAME_IMAGE_SCALE);
+    private ExposureEstimator mExposureEstimator = new ExposureEstimator();
+
+    // Per-frame scratch buffers and the inputs that never change between frames
+    private final MatPool mPool = new MatPool(MAT_LEAK_CHECK);
+    private final Mat mEmptyMask = new Mat();
+    private static final int HIST_SIZE = 256;
+    private final MatOfInt mHistSize = new MatOfInt(HIST_SIZE);
+    private final MatOfFloat mHistRanges = new MatOfFloat(0f, 256f);
+    private final MatOfInt mHistChannels = new MatOfInt(0);
+    private final Mat mErodeElement = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(5, 5));
+    private final Mat mDilateElement = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE,
+            new Size(FIDUCIAL_DILATE_SIZE, FIDUCIAL_DILATE_SIZE));
+    private FiducialMethod mFiducialMethod = FIDUCIAL_METHOD;
+    private ExecutorService mRansacExecutor;
+    private final long[] mGateCheckedCounts = new long[QualityGate.values().length];
+    private final long[] mGateRejectedCounts = new long[QualityGate.values().length];
     private int mMoveCloserCount = 0;
     private boolean DEBUG_FLAG = false;
+    private volatile FrameProfiler mProfiler = null;
+    private final MetricsRegistry mMetrics = MetricsRegistry.getInstance();
+    private final MetricsRegistry.Gauge mLiveMatGauge = new MetricsRegistry.Gauge() {
+        @Override
+        public long getValue() {
+            return mPool.getLiveCount();
+        }
+    };
 
     public enum ExposureResult {
         UNDER_EXPOSED, NORMAL, OVER_EXPOSED
     }
 
+    public enum QualityGate {
+        EXPOSURE, SHARPNESS, DETECTION, FIDUCIAL
+    }
+
+    public enum Detector {
+        SIFT, BRISK
+    }
+
+    public enum FiducialMethod {
+        KMEANS, PROJECTION
+    }
+
     public enum SizeResult{
         RIGHT_SIZE, LARGE, SMALL, INVALID
 
@@ -120,11 +172,14 @@ public class ImageProcessor {
         public boolean isShadow;
         public boolean fiducial;
         public double angle;
+        public QualityGate failedGate;
+        public Rect resultWindowRect;
 
         public CaptureResult(boolean allChecksPassed, boolean testStripDetected, Mat resultMat, Mat croppedRDT, boolean fiducial,
                              ExposureResult exposureResult, SizeResult sizeResult,  boolean isCentered,
                              boolean isRightOrientation, double angle, boolean isSharp, boolean isShadow, MatOfPoint2f boundary){
             this.allChecksPassed = allChecksPassed;
+            this.testStripDetected = testStripDetected;
             this.resultMat = resultMat;
             this.croppedRDTMat = croppedRDT;
             this.fiducial = fiducial;
@@ -137,6 +192,27 @@ public class ImageProcessor {
             this.angle = angle;
             this.boundary = boundary;
         }
+
+        /**
+         * Releases the Mats handed out with this result
+         */
+        public void release() {
+            mPool.release(resultMat);
+            mPool.release(croppedRDTMat);
+            mPool.release(boundary);
+        }
+    }
+
+    public static class QualityResult {
+        public ExposureResult exposureResult;
+        public boolean isSharp;
+        public QualityGate failedGate;
+
+        public QualityResult(ExposureResult exposureResult, boolean isSharp, QualityGate failedGate) {
+            this.exposureResult = exposureResult;
+            this.isSharp = isSharp;
+            this.failedGate = failedGate;
+        }
     }
 
     public static class InterpretationResult {
@@ -145,6 +221,7 @@ public class ImageProcessor {
         public boolean testB;
         public Mat resultMat;
         public Bitmap resultBitmap;
+        public LineProfile profile;
 
         public InterpretationResult() {
             control = false;
@@ -167,46 +244,281 @@ public class ImageProcessor {
     }
 
     public ImageProcessor (Activity activity) {
+        this(activity, RdtProfile.QUICKVUE);
+    }
+
+    /**
+     * Creates a processor for one kind of RDT, usually through {@link RdtProfileRegistry}
+     * @param context: used to load the reference image and its cached features
+     * @param profile: the RDT to look for
+     */
+    public ImageProcessor (Context context, RdtProfile profile) {
+        long startTime = System.currentTimeMillis();
+        mProfile = profile;
+        initDetectors();
+
+        // Reuse the reference features from a previous run if they are still valid
+        ReferenceFeatureCache cache = new ReferenceFeatureCache(
+                new File(context.getApplicationContext().getCacheDir(), profile.name + "_" + REF_FEATURE_CACHE_FILE),
+                getReferenceCacheKey(profile.refName));
+        ReferenceFeatureCache.Features features = cache.load();
+        if (features == null) {
+            Mat refImg = loadReferenceImage(context, profile);
+            features = computeReferenceFeatures(refImg);
+            refImg.release();
+            cache.save(features);
+        }
+        setReferenceFeatures(features);
+
+        if (DEBUG_FLAG)
+            Log.d(TAG, "REFERENCE LOAD/DETECT/COMPUTE: " + (System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * Creates a processor from an already decoded reference image so that it can be
+     * constructed without an Activity, e.g. by the offline benchmarks of debug builds
+     * @param refImg: the RGBA reference image of the RDT
+     */
+    public ImageProcessor (Mat refImg) {
+        this(refImg, RdtProfile.QUICKVUE);
+    }
+
+    /**
+     * @param refImg: the RGBA reference image of the RDT
+     * @param profile: the RDT the reference image shows
+     */
+    public ImageProcessor (Mat refImg, RdtProfile profile) {
+        mProfile = profile;
+        initDetectors();
+        setReferenceFeatures(computeReferenceFeatures(refImg));
+    }
+
+    private void initDetectors() {
         mFeatureDetector = BRISK.create(45, 4, 1.0f);
         mMatcher = BFMatcher.create(BFMatcher.BRUTEFORCE_HAMMING, false);
-        mRefImg = new Mat();
+        siftDetector = SIFT.create();
+    }
 
-        //Load reference image for Quickvue flu test strip
-        Bitmap bitmap = BitmapFactory.decodeResource(activity.getApplicationContext().getResources(), R.drawable.quickvue_ref_v5);
-        //Load reference image for SD Bioline Malaria RDT
-        //Bitmap bitmap = BitmapFactory.decodeResource(activity.getApplicationContext().getResources(), R.drawable.sd_bioline_malaria_ag_pf);
+    /**
+     * Precomputes the corners of the reference image, both at its own size for mapping it into
+     * frames and at the size cropRDT warps to, so they are not rebuilt for every frame
+     */
+    private void initReferenceGeometry() {
+        mRefCorners = getCorners(mRefSize);
+        mWarpSize = new Size(Math.round(mRefSize.width/REF_IMAGE_SCALE), Math.round(mRefSize.height/REF_IMAGE_SCALE));
+        mWarpCorners = getCorners(mWarpSize);
+        Rect window = mProfile.resultWindow;
+        mRefResultWindowCorners = new MatOfPoint2f(window.tl(), new Point(window.x + window.width, window.y),
+                window.br(), new Point(window.x, window.y + window.height));
+    }
+
+    private static MatOfPoint2f getCorners(Size size) {
+        return new MatOfPoint2f(new Point(0, 0), new Point(size.width - 1, 0),
+                new Point(size.width - 1, size.height - 1), new Point(0, size.height - 1));
+    }
+
+    /**
+     * Builds the cache key for a reference image; any change to the app or to the
+     * parameters used to compute the reference features invalidates the cached blob
+     * @param refName: the name of the reference image resource
+     * @return the cache key
+     */
+    private static String getReferenceCacheKey(String refName) {
+        return String.format(Locale.US, "%s/%d/brisk(45,4,1.0)/sift/blur5/scale%.3f",
+                refName, BuildConfig.VERSION_CODE, REF_IMAGE_SCALE);
+    }
+
+    /**
+     * Detects the BRISK and SIFT keypoints and descriptors of the reference image
+     * @param refImg: the RGBA reference image
+     * @return the reference features
+     */
+    private ReferenceFeatureCache.Features computeReferenceFeatures(Mat refImg) {
+        ReferenceFeatureCache.Features features = new ReferenceFeatureCache.Features();
+        Mat greyRefImg = new Mat();
 
-        Utils.bitmapToMat(bitmap, mRefImg);
         //resize(mRefImg, mRefImg, new Size(bitmap.getWidth(), bitmap.getHeight()));
-        cvtColor(mRefImg, mRefImg, Imgproc.COLOR_RGB2GRAY);
-        mRefDescriptor = new Mat();
-        siftRefDescriptor = new Mat();
-        mRefKeypoints = new MatOfKeyPoint();
-        siftRefKeypoints = new MatOfKeyPoint();
-        long startTime = System.currentTimeMillis();
-        mFeatureDetector.detectAndCompute(mRefImg, new Mat(), mRefKeypoints, mRefDescriptor);
+        cvtColor(refImg, greyRefImg, Imgproc.COLOR_RGB2GRAY);
+        Mat mask = new Mat();
+        mFeatureDetector.detectAndCompute(greyRefImg, mask, features.briskKeypoints, features.briskDescriptor);
 
-        Imgproc.GaussianBlur(mRefImg, mRefImg, new Size(5, 5), 0, 0);
-        Imgproc.resize(mRefImg, mRefImg, new Size(), REF_IMAGE_SCALE, REF_IMAGE_SCALE, Imgproc.INTER_LINEAR);
-        refImgSharpness = calculateSharpness(mRefImg);
+        Imgproc.GaussianBlur(greyRefImg, greyRefImg, new Size(5, 5), 0, 0);
+        Imgproc.resize(greyRefImg, greyRefImg, new Size(), REF_IMAGE_SCALE, REF_IMAGE_SCALE, Imgproc.INTER_LINEAR);
+        features.refSharpness = calculateSharpness(greyRefImg);
 
-        siftDetector = SIFT.create();
-        siftMatcher = BFMatcher.create(BFMatcher.BRUTEFORCE, false);
-        siftDetector.detectAndCompute(mRefImg, new Mat(), siftRefKeypoints, siftRefDescriptor);
+        siftDetector.detectAndCompute(greyRefImg, mask, features.siftKeypoints, features.siftDescriptor);
+        features.refSize = greyRefImg.size();
+        features.refImg = greyRefImg;
+
+        mask.release();
+        return features;
+    }
+
+    private void setReferenceFeatures(ReferenceFeatureCache.Features features) {
+        mRefImg = features.refImg;
+        mRefSize = features.refSize;
+        initReferenceGeometry();
+        refImgSharpness = features.refSharpness;
+        mRefKeypoints = features.briskKeypoints;
+        mRefDescriptor = features.briskDescriptor;
+        siftRefKeypoints = features.siftKeypoints;
+        siftRefDescriptor = features.siftDescriptor;
+        setSiftMatcherType(SIFT_MATCHER_TYPE);
 
         if (DEBUG_FLAG) {
-            Log.d(TAG, "BRISK keypoints: " + mRefKeypoints.toArray().length);
-            Log.d(TAG, "SIFT keypoints: " + siftRefKeypoints.toArray().length);
+            Log.d(TAG, "BRISK keypoints: " + mRefKeypoints.rows());
+            Log.d(TAG, "SIFT keypoints: " + siftRefKeypoints.rows());
             Log.d(TAG, "Ref sharpness: " + refImgSharpness);
-            Log.d(TAG, "REFERENCE LOAD/DETECT/COMPUTE: " + (System.currentTimeMillis() - startTime));
         }
     }
 
+    /**
+     * Selects the strategy used to match frame SIFT descriptors against the reference.
+     * This must not be called while a frame is being processed.
+     * @param type: the matcher type
+     */
+    public void setSiftMatcherType(ReferenceMatcher.Type type) {
+        if (siftMatcher != null)
+            siftMatcher.release();
+        siftMatcher = ReferenceMatcher.create(type, siftRefDescriptor);
+    }
+
+    /**
+     * Selects how the fiducials are located on the perspective-corrected RDT
+     * @param method: the fiducial detection method
+     */
+    public void setFiducialMethod(FiducialMethod method) {
+        mFiducialMethod = method;
+    }
+
+    /**
+     * @param inputMat: the perspective-corrected RDT
+     * @param method: the fiducial detection method
+     * @return the result window, or an empty Rect if the fiducials are not where we expected
+     */
+    Rect checkFiducial(Mat inputMat, FiducialMethod method) {
+        switch (method) {
+            case PROJECTION:
+                return checkFiducialProjection(inputMat);
+            case KMEANS:
+            default:
+                return checkFiducialKMeans(inputMat);
+        }
+    }
+
+    Mat getSiftRefDescriptor() {
+        return siftRefDescriptor;
+    }
+
+    private static Mat loadReferenceImage(Context context, RdtProfile profile) {
+        Mat refImg = new Mat();
+        Bitmap bitmap = BitmapFactory.decodeResource(context.getApplicationContext().getResources(), profile.refDrawable);
+        Utils.bitmapToMat(bitmap, refImg);
+        bitmap.recycle();
+        return refImg;
+    }
+
+    public RdtProfile getProfile() {
+        return mProfile;
+    }
+
+    /**
+     * Releases the reference features and scratch Mats, after which the processor cannot be used
+     */
+    public void release() {
+        mMetrics.removeGauge(MetricsRegistry.LIVE_MATS, mLiveMatGauge);
+        mPool.release();
+        if (siftMatcher != null)
+            siftMatcher.release();
+        if (mRefImg != null)
+            mRefImg.release();
+        siftRefKeypoints.release();
+        siftRefDescriptor.release();
+        mRefKeypoints.release();
+        mRefDescriptor.release();
+        mRefCorners.release();
+        mWarpCorners.release();
+        mRefResultWindowCorners.release();
+        synchronized (this) {
+            if (mRansacExecutor != null)
+                mRansacExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Attaches a profiler that receives the latency of each processing stage
+     * @param profiler: the profiler to record into, or null to disable profiling
+     */
+    public void setProfiler(FrameProfiler profiler) {
+        mProfiler = profiler;
+    }
+
+    private long startStage() {
+        return mProfiler != null ? System.nanoTime() : 0;
+    }
+
+    private void endStage(String stage, long startTime) {
+        if (mProfiler != null)
+            mProfiler.record(stage, System.nanoTime() - startTime);
+    }
+
+    /**
+     * @param activity: the activity the reader runs in
+     * @return the processor for the default QuickVue profile
+     */
     public static ImageProcessor getInstance(Activity activity) {
-        if (instance == null)
-            instance = new ImageProcessor(activity);
+        return RdtProfileRegistry.getInstance(activity).get(RdtProfile.QUICKVUE.name);
+    }
+
+    /**
+     * Forgets the tracked RDT and the exposure of past frames so that the next frame goes through
+     * full detection. Neither is thread-safe, so no frame may be in checkQuality or captureRDT.
+     */
+    public void resetTracking() {
+        resetBoundaryTracking();
+        resetExposure();
+    }
 
-        return instance;
+    /**
+     * Forgets the tracked RDT, from the thread that calls captureRDT
+     */
+    public void resetBoundaryTracking() {
+        mBoundaryTracker.reset();
+    }
+
+    /**
+     * Forgets the exposure of past frames, from the thread that calls checkQuality
+     */
+    public void resetExposure() {
+        mExposureEstimator.reset();
+    }
+
+    /**
+     * Releases the scratch Mats of the calling thread, e.g. before a worker thread exits
+     */
+    public void releaseThreadScratch() {
+        mPool.releaseThread();
+    }
+
+    /**
+     * Turns on tracking of the Mats handed out by captureRDT so leaks show up in the live count
+     */
+    public void setLeakCheck(boolean leakCheck) {
+        mPool.setLeakCheck(leakCheck);
+    }
+
+    /**
+     * @return the number of native Mats owned by or handed out by this processor that are still alive
+     */
+    public int getLiveMatCount() {
+        return mPool.getLiveCount();
+    }
+
+    /**
+     * @return a gauge reading getLiveMatCount(), which release() unregisters
+     */
+    public MetricsRegistry.Gauge getLiveMatGauge() {
+        return mLiveMatGauge;
     }
 
     public static void loadOpenCV(Context context, BaseLoaderCallback mLoaderCallback) {
@@ -227,18 +539,165 @@ public class ImageProcessor {
      */
     public CaptureResult captureRDT(Mat inputMat) {
         // Convert the input to grayscale
-        Mat greyMat = new Mat();
+        long stageTime = startStage();
+        Mat greyMat = mPool.get("grey");
         cvtColor(inputMat, greyMat, Imgproc.COLOR_RGBA2GRAY);
+        endStage(FrameProfiler.STAGE_GRAYSCALE, stageTime);
+
+        return captureRDT(inputMat, greyMat);
+    }
+
+    /**
+     * Attempts to identify the presence of the RDT within the image
+     * @param inputMat: the input image
+     * @param greyMat: the luma of the input image, e.g. the Y plane of the camera frame
+     * @return a CaptureResult object with details for feedback
+     */
+    public CaptureResult captureRDT(Mat inputMat, Mat greyMat) {
+        LumaPyramid pyramid = new LumaPyramid(greyMat, mPool);
+        return captureRDT(inputMat, pyramid, checkQuality(pyramid));
+    }
+
+    /**
+     * Checks the exposure and sharpness of the image, which only need its luma
+     * @param greyMat: the luma of the input image
+     * @return a QualityResult object to pass on to captureRDT
+     */
+    public QualityResult checkQuality(Mat greyMat) {
+        return checkQuality(new LumaPyramid(greyMat, mPool));
+    }
+
+    /**
+     * Checks the exposure of the image with the sampled ExposureEstimator and its sharpness on
+     * the coarsest pyramid level that keeps the decision accurate
+     * @param pyramid: the luma pyramid of the input image
+     * @return a QualityResult object to pass on to captureRDT
+     */
+    public QualityResult checkQuality(LumaPyramid pyramid) {
+        ExposureResult exposureResult = ExposureResult.NORMAL;
+        boolean isSharp = false;
+        QualityGate failedGate = null;
+
+        // Run the cheap gates in order, stopping at the first failure if early exit is enabled
+        for (QualityGate gate : QUALITY_GATE_ORDER) {
+            if (failedGate != null && EARLY_EXIT_ENABLED)
+                break;
 
-        // Check brightness
-        ExposureResult exposureResult = checkBrightness(greyMat);
+            long stageTime = startStage();
+            boolean passed;
+            if (gate == QualityGate.EXPOSURE) {
+                Mat greyMat = pyramid.getBase();
+                exposureResult = mExposureEstimator.update(greyMat, getViewfinderRect(greyMat));
+                endStage(FrameProfiler.STAGE_BRIGHTNESS, stageTime);
+                passed = exposureResult == ExposureResult.NORMAL;
+            } else {
+                isSharp = checkSharpness(pyramid, getSharpnessLevel(pyramid.getBase()));
+                endStage(FrameProfiler.STAGE_SHARPNESS, stageTime);
+                passed = isSharp;
+            }
+
+            recordGate(gate, passed);
+            if (!passed && failedGate == null)
+                failedGate = gate;
+        }
 
-        // Check sharpness
-        boolean isSharp = checkSharpness(greyMat.submat(getViewfinderRect(greyMat)));
+        return new QualityResult(exposureResult, isSharp, failedGate);
+    }
+
+    private synchronized void recordGate(QualityGate gate, boolean passed) {
+        mGateCheckedCounts[gate.ordinal()]++;
+        if (!passed)
+            mGateRejectedCounts[gate.ordinal()]++;
+    }
 
-        // Attempt to detect the RDT using homography
-        MatOfPoint2f boundary = detectRDTWithSIFT(greyMat, 5);
-//        MatOfPoint2f boundary = detectRDT(greyMat);
+    /**
+     * @param gate: the quality gate
+     * @return the number of frames that reached the gate
+     */
+    public synchronized long getGateCheckedCount(QualityGate gate) {
+        return mGateCheckedCounts[gate.ordinal()];
+    }
+
+    /**
+     * @param gate: the quality gate
+     * @return the fraction of the frames reaching the gate that it rejected
+     */
+    public synchronized double getGateRejectionRate(QualityGate gate) {
+        long checked = mGateCheckedCounts[gate.ordinal()];
+        return checked == 0 ? 0 : (double) mGateRejectedCounts[gate.ordinal()] / checked;
+    }
+
+    /**
+     * @param gate: the quality gate
+     * @param failedGate: the first gate the frame failed, or null
+     * @return whether the gate was skipped because an earlier gate already failed
+     */
+    public static boolean isGateSkipped(QualityGate gate, QualityGate failedGate) {
+        return EARLY_EXIT_ENABLED && failedGate != null && getGateOrder(gate) > getGateOrder(failedGate);
+    }
+
+    private static int getGateOrder(QualityGate gate) {
+        if (gate == QualityGate.DETECTION)
+            return QUALITY_GATE_ORDER.length;
+        if (gate == QualityGate.FIDUCIAL)
+            return QUALITY_GATE_ORDER.length + 1;
+        return Arrays.asList(QUALITY_GATE_ORDER).indexOf(gate);
+    }
+
+    /**
+     * Attempts to identify the presence of the RDT within an image whose quality is already known
+     * @param inputMat: the input image
+     * @param pyramid: the luma pyramid of the input image
+     * @param quality: the result of checkQuality for the image
+     * @return a CaptureResult object with details for feedback
+     */
+    public CaptureResult captureRDT(Mat inputMat, LumaPyramid pyramid, QualityResult quality) {
+        return captureRDT(inputMat, pyramid, quality, FRAME_IMAGE_SCALE);
+    }
+
+    /**
+     * Attempts to identify the presence of the RDT within an image whose quality is already known
+     * @param inputMat: the input image
+     * @param pyramid: the luma pyramid of the input image
+     * @param quality: the result of checkQuality for the image
+     * @param frameScale: how far to downsample the image before SIFT detection, e.g. less than
+     *                  FRAME_IMAGE_SCALE to save time on a hot device
+     * @return a CaptureResult object with details for feedback
+     */
+    public CaptureResult captureRDT(Mat inputMat, LumaPyramid pyramid, QualityResult quality, double frameScale) {
+        long startTime = System.nanoTime();
+        Mat greyMat = pyramid.getBase();
+        ExposureResult exposureResult = quality.exposureResult;
+        boolean isSharp = quality.isSharp;
+        QualityGate failedGate = quality.failedGate;
+        long stageTime;
+
+        // Skip detection entirely for frames that already failed a cheaper gate
+        if (EARLY_EXIT_ENABLED && failedGate != null) {
+            CaptureResult captureResult = new CaptureResult(false, false, mPool.track(crop(inputMat)),
+                    mPool.track(new Mat()), false, exposureResult, SizeResult.INVALID, false, false, 0.0,
+                    isSharp, false, mPool.track(new MatOfPoint2f()));
+            captureResult.failedGate = failedGate;
+            mMetrics.histogram(MetricsRegistry.CAPTURE_RDT).record(System.nanoTime() - startTime);
+            return captureResult;
+        }
+
+        // Follow the RDT from the previous frame if possible, otherwise detect it using homography
+        MatOfPoint2f boundary = null;
+        if (TRACKING_ENABLED) {
+            stageTime = startStage();
+            boundary = mBoundaryTracker.track(greyMat);
+            endStage(FrameProfiler.STAGE_TRACK, stageTime);
+            if (DEBUG_FLAG)
+                Log.d(TAG, String.format("tracked: %b, confidence %.2f", boundary != null, mBoundaryTracker.getConfidence()));
+        }
+        if (boundary == null) {
+            stageTime = startStage();
+            boundary = RDT_DETECTOR == Detector.BRISK ? detectRDT(greyMat) : detectRDTWithSIFT(pyramid, 5, frameScale);
+            endStage(FrameProfiler.STAGE_SIFT_DETECT, stageTime);
+            if (TRACKING_ENABLED && boundary.size().width > 0 && boundary.size().height > 0)
+                mBoundaryTracker.initialize(greyMat, boundary);
+        }
 
         // Check the detected RDT's size, position, and orientation
         boolean isCentered = false;
@@ -255,31 +714,62 @@ public class ImageProcessor {
         }
 
         // Determine intermediate result before checking fiducials
-        boolean passed = exposureResult == ExposureResult.NORMAL &&
-                isSharp &&
-                sizeResult == SizeResult.RIGHT_SIZE &&
-                isCentered &&
-                isRightOrientation;
+        boolean positioned = sizeResult == SizeResult.RIGHT_SIZE && isCentered && isRightOrientation;
+        recordGate(QualityGate.DETECTION, positioned);
+        if (!positioned && failedGate == null)
+            failedGate = QualityGate.DETECTION;
+        boolean passed = failedGate == null;
 
         // Check for fiducials for QuickVue strip
         boolean fiducial = false;
-        Mat correctedMat = new Mat();
+        Rect resultWindowRect = new Rect();
+        Mat correctedMat;
         if (passed) {
             correctedMat = cropRDT(inputMat, boundary);
-            Mat resultMat = cropResultWindow(correctedMat);
-            fiducial = resultMat.width() > 0 && resultMat.height() > 0;
-            resultMat.release();
+            resultWindowRect = findResultWindow(correctedMat);
+            fiducial = resultWindowRect.width > 0 && resultWindowRect.height > 0;
+            recordGate(QualityGate.FIDUCIAL, fiducial);
+            if (!fiducial)
+                failedGate = QualityGate.FIDUCIAL;
             passed = fiducial;
             if (DEBUG_FLAG)
                 Log.d(TAG, String.format("fiducial: %b", fiducial));
+        } else {
+            correctedMat = new Mat();
         }
 
-        // Release resources
-        greyMat.release();
+        if (mPool.isLeakCheck())
+            Log.d(TAG, String.format("live native Mats: %d", mPool.getLiveCount()));
 
         // Return a CaptureResult object
-        return new CaptureResult(passed, testStripDetected, crop(inputMat), correctedMat, fiducial, exposureResult, sizeResult,
-                isCentered, isRightOrientation, angle, isSharp, false, boundary);
+        CaptureResult captureResult = new CaptureResult(passed, testStripDetected, mPool.track(crop(inputMat)), mPool.track(correctedMat), fiducial,
+                exposureResult, sizeResult, isCentered, isRightOrientation, angle, isSharp, false, mPool.track(boundary));
+        captureResult.failedGate = failedGate;
+        captureResult.resultWindowRect = resultWindowRect;
+        mMetrics.histogram(MetricsRegistry.CAPTURE_RDT).record(System.nanoTime() - startTime);
+        if (passed)
+            mMetrics.counter(MetricsRegistry.CAPTURE_PASSED).increment();
+        return captureResult;
+    }
+
+    /**
+     * @param greyMat: the full-resolution luma of the input image
+     * @return the coarsest pyramid level whose viewfinder is still at least as wide as the
+     * reference image, which is the width sharpness is measured at
+     */
+    int getSharpnessLevel(Mat greyMat) {
+        return LumaPyramid.getCoarsestLevel(mRefSize.width / getViewfinderRect(greyMat).width);
+    }
+
+    /**
+     * Determines if the viewfinder area of a pyramid level is sufficiently sharp
+     * @param pyramid: the luma pyramid of the input image
+     * @param level: the pyramid level to measure
+     * @return a boolean that describes whether the sharpness is good enough or not
+     */
+    boolean checkSharpness(LumaPyramid pyramid, int level) {
+        Mat levelMat = pyramid.getLevel(level);
+        return checkSharpness(levelMat.submat(getViewfinderRect(levelMat)));
     }
 
     /**
@@ -289,8 +779,8 @@ public class ImageProcessor {
      */
     private boolean checkSharpness(Mat inputMat) {
         // Resize the image
-        Mat resized = new Mat();
-        double scaleFactor = mRefImg.size().width/inputMat.size().width;
+        Mat resized = mPool.get("sharpnessResized");
+        double scaleFactor = mRefSize.width/inputMat.size().width;
         resize(inputMat, resized, new Size(inputMat.size().width*scaleFactor,
                 inputMat.size().height*scaleFactor));
 
@@ -301,7 +791,6 @@ public class ImageProcessor {
 
         // Release resources
         inputMat.release();
-        resized.release();
 
         // Compare sharpness to requirement
         return sharpness > (refImgSharpness * (1-SHARPNESS_THRESHOLD));
@@ -314,87 +803,21 @@ public class ImageProcessor {
      */
     private double calculateSharpness(Mat input) {
         // Compute Laplacian
-        Mat laplace = new Mat();
+        Mat laplace = mPool.get("laplacian");
         Laplacian(input, laplace, CvType.CV_64F);
 
         // Compute Laplacian's mean and stdev
         MatOfDouble median = new MatOfDouble();
         MatOfDouble std = new MatOfDouble();
         meanStdDev(laplace, median, std);
+        double stdev = std.get(0,0)[0];
 
         // Release resources
-        laplace.release();
+        median.release();
+        std.release();
 
         // Return squared stdev
-        return pow(std.get(0,0)[0], 2);
-    }
-
-    /**
-     * Determines if the input image is sufficiently exposed
-     * @param inputMat: the input image
-     * @return exposureResult: an ExposureResult enum value that can be {NORMAL,
-     * OVER_EXPOSED, UNDER_EXPOSED}
-     */
-    private ExposureResult checkBrightness(Mat inputMat) {
-        // Compute brightness histograms
-        float[] histograms = calculateBrightness(inputMat);
-
-        // Calculate brightest value
-        int maxWhite = 0;
-        for (int i = histograms.length-1; i >= 0; i--) {
-            if (histograms[i] > 0) {
-                maxWhite = i;
-                break;
-            }
-        }
-
-        // Compute amount of clipping
-        float clippingCount = histograms[histograms.length-1];
-
-        // Compare exposure to requirements
-        ExposureResult exposureResult;
-        if (maxWhite >= OVER_EXP_THRESHOLD && clippingCount > OVER_EXP_WHITE_COUNT) {
-            exposureResult = ExposureResult.OVER_EXPOSED;
-            return exposureResult;
-        } else if (maxWhite < UNDER_EXP_THRESHOLD) {
-            exposureResult = ExposureResult.UNDER_EXPOSED;
-            return exposureResult;
-        } else {
-            exposureResult = ExposureResult.NORMAL;
-            return exposureResult;
-        }
-    }
-
-    /**
-     * Computes a brightness histogram for the input image
-     * @param input: the input image
-     * @return mBuff: a float[] histogram with 256 elements
-     */
-    private float[] calculateBrightness(Mat input) {
-        // Initialize variables
-        int mHistSizeNum = 256;
-        MatOfInt mHistSize = new MatOfInt(mHistSizeNum);
-        Mat hist = new Mat();
-        final float[] mBuff = new float[mHistSizeNum];
-        MatOfFloat histogramRanges = new MatOfFloat(0f, 256f);
-        MatOfInt mChannels[] = new MatOfInt[] { new MatOfInt(0)};
-        org.opencv.core.Size sizeRgba = input.size();
-
-        // Go through each channel, normalize the histogram, and add it to mBuff
-        // TODO: this for loop is somewhat set up to handle multi-channel, but not done
-        for (int ch = 0; ch < input.channels(); ch++) {
-            Imgproc.calcHist(Arrays.asList(input), mChannels[ch], new Mat(), hist,
-                    mHistSize, histogramRanges);
-            Core.normalize(hist, hist, sizeRgba.height/2, 0, Core.NORM_INF);
-            hist.get(0, 0, mBuff);
-            mChannels[ch].release();
-        }
-
-        // Release resources
-        mHistSize.release();
-        histogramRanges.release();
-        hist.release();
-        return mBuff;
+        return pow(stdev, 2);
     }
 
     /**
@@ -509,6 +932,10 @@ public class ImageProcessor {
     }
 
     public String[] getQualityCheckText(SizeResult sizeResult, boolean isCentered, boolean isRightOrientation, boolean isSharp, ExposureResult exposureResult) {
+        return getQualityCheckText(sizeResult, isCentered, isRightOrientation, isSharp, exposureResult, null);
+    }
+
+    public String[] getQualityCheckText(SizeResult sizeResult, boolean isCentered, boolean isRightOrientation, boolean isSharp, ExposureResult exposureResult, QualityGate failedGate) {
 
         String[] texts = new String[4];
 
@@ -524,6 +951,14 @@ public class ImageProcessor {
         texts[2] = sizeResult == SizeResult.RIGHT_SIZE && isCentered && isRightOrientation ? "&#x2713; Position/Size: passed": "Position/Size: failed";
         texts[3] = "&#x2713; Shadow: passed";
 
+        // Gates after the failing one were never run
+        if (isGateSkipped(QualityGate.SHARPNESS, failedGate))
+            texts[0] = "Sharpness: not checked";
+        if (isGateSkipped(QualityGate.EXPOSURE, failedGate))
+            texts[1] = "Brightness: not checked";
+        if (isGateSkipped(QualityGate.DETECTION, failedGate))
+            texts[2] = "Position/Size: not checked";
+
         return texts;
 
     }
@@ -573,11 +1008,38 @@ public class ImageProcessor {
     }
 
     public InterpretationResult interpretResult(Mat inputMat, MatOfPoint2f boundary) {
+        long startTime = System.nanoTime();
         Mat correctedMat = cropRDT(inputMat, boundary);
         Mat resultMat = cropResultWindow(correctedMat);
-        boolean control, testA, testB;
+        correctedMat.release();
+        return interpretResultWindow(resultMat, startTime);
+    }
+
+    /**
+     * Interprets a frame that passed captureRDT, reusing its perspective-corrected RDT and result
+     * window instead of warping the strip and locating the fiducials again
+     * @param captureResult: the result of captureRDT for the frame
+     * @return an InterpretationResult object
+     */
+    public InterpretationResult interpretResult(CaptureResult captureResult) {
+        if (captureResult.croppedRDTMat == null || captureResult.croppedRDTMat.empty() ||
+                captureResult.resultWindowRect == null)
+            return interpretResult(captureResult.resultMat, captureResult.boundary);
+
+        long startTime = System.nanoTime();
+        Mat resultMat = cropResultWindow(captureResult.croppedRDTMat, captureResult.resultWindowRect);
+        return interpretResultWindow(resultMat, startTime);
+    }
 
+    /**
+     * Enhances the result window if needed and reads its lines
+     * @param resultMat: the result window, which the InterpretationResult takes over
+     * @param startTime: when the interpretation started, in System.nanoTime
+     * @return an InterpretationResult object
+     */
+    private InterpretationResult interpretResultWindow(Mat resultMat, long startTime) {
         if (resultMat.width() == 0 && resultMat.height() == 0) {
+            mMetrics.histogram(MetricsRegistry.INTERPRET_RESULT).record(System.nanoTime() - startTime);
             return new InterpretationResult(resultMat, false, false, false);
         }
 
@@ -600,46 +1062,105 @@ public class ImageProcessor {
         //resultMat = enhanceResultWindow(resultMat, new Size(10, 10));
         //resultMat = correctGamma(resultMat, 0.75);
 
-        control = readControlLine(resultMat, new Point(CONTROL_LINE_POSITION, 0));
-        testA = readTestLine(resultMat, new Point(TEST_A_LINE_POSITION, 0));
-        testB = readTestLine(resultMat, new Point(TEST_B_LINE_POSITION, 0));
+        long stageTime = startStage();
+        LineProfile profile = LineProfile.compute(resultMat);
+        boolean[] lines = readLines(profile);
+        endStage(FrameProfiler.STAGE_READ_LINE, stageTime);
 
         grayMat.release();
         mu.release();
         sigma.release();
 
-        return new InterpretationResult(resultMat, control, testA, testB);
+        InterpretationResult interpretationResult = new InterpretationResult(resultMat, lines[0], lines[1], lines[2]);
+        interpretationResult.profile = profile;
+        mMetrics.histogram(MetricsRegistry.INTERPRET_RESULT).record(System.nanoTime() - startTime);
+        return interpretationResult;
     }
 
+    /**
+     * Finds the RDT in a still image and interprets it. The SIFT matches are computed once, and
+     * homographies for every RANSAC threshold are estimated in parallel from them; the lowest
+     * threshold whose boundary passes the size, position and orientation checks wins, otherwise
+     * the highest one.
+     * @param inputMat: the RGBA still image
+     * @return an InterpretationResult object, empty if the RDT was not found
+     */
     public InterpretationResult interpretResult(Mat inputMat) {
-        MatOfPoint2f boundary = new MatOfPoint2f();
         Mat grayMat = new Mat();
         cvtColor(inputMat, grayMat, Imgproc.COLOR_RGBA2GRAY);
+        SiftMatches matches = matchSiftFeatures(new LumaPyramid(grayMat, mPool), FRAME_IMAGE_SCALE);
+        grayMat.release();
+        if (matches == null)
+            return new InterpretationResult();
 
-        int cnt = 3;
-        SizeResult isSizeable = SizeResult.INVALID;
-        boolean isCentered = false;
-        boolean isUpright = false;
-
-        do {
-            cnt++;
-            boundary = detectRDTWithSIFT(grayMat, cnt);
-            isSizeable = checkSize(boundary, new Size(inputMat.size().width/CROP_RATIO, inputMat.size().height/CROP_RATIO));
-            isCentered = checkIfCentered(boundary, inputMat.size());
-            isUpright = checkOrientation(boundary);
+        // Estimate the homographies for all thresholds at once
+        List<Future<MatOfPoint2f>> futures = new ArrayList<>();
+        for (int cnt = RANSAC_MIN_THRESHOLD; cnt <= RANSAC_MAX_THRESHOLD; cnt++) {
+            final int ransac = cnt;
+            final SiftMatches finalMatches = matches;
+            futures.add(getRansacExecutor().submit(new Callable<MatOfPoint2f>() {
+                @Override
+                public MatOfPoint2f call() {
+                    return estimateBoundary(finalMatches, ransac);
+                }
+            }));
+        }
+        List<MatOfPoint2f> boundaries = new ArrayList<>();
+        for (Future<MatOfPoint2f> future : futures) {
+            try {
+                boundaries.add(future.get());
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+                boundaries.add(new MatOfPoint2f());
+            }
+        }
+        matches.release();
+
+        // Check the candidates in threshold order, the same order the thresholds used to be tried in
+        MatOfPoint2f boundary = boundaries.get(boundaries.size() - 1);
+        for (int i = 0; i < boundaries.size(); i++) {
+            MatOfPoint2f candidate = boundaries.get(i);
+            SizeResult isSizeable = checkSize(candidate, new Size(inputMat.size().width/CROP_RATIO, inputMat.size().height/CROP_RATIO));
+            boolean isCentered = checkIfCentered(candidate, inputMat.size());
+            boolean isUpright = checkOrientation(candidate);
             if (DEBUG_FLAG)
                 Log.d(TAG, String.format("SIFT-right size %s, center %s, orientation %s, (%.2f, %.2f), cnt %d",
-                        isSizeable, isCentered, isUpright, inputMat.size().width, inputMat.size().height, cnt));
-        } while(!(isSizeable==SizeResult.RIGHT_SIZE && isCentered && isUpright) && cnt < 8);
+                        isSizeable, isCentered, isUpright, inputMat.size().width, inputMat.size().height,
+                        RANSAC_MIN_THRESHOLD + i));
+            if (isSizeable == SizeResult.RIGHT_SIZE && isCentered && isUpright) {
+                boundary = candidate;
+                break;
+            }
+        }
+        for (MatOfPoint2f candidate : boundaries) {
+            if (candidate != boundary)
+                candidate.release();
+        }
 
-        if (boundary.size().width <= 0 && boundary.size().height <= 0)
+        if (boundary.size().width <= 0 && boundary.size().height <= 0) {
+            boundary.release();
             return new InterpretationResult();
+        }
+
+        InterpretationResult interpretationResult = interpretResult(inputMat, boundary);
+        boundary.release();
+        return interpretationResult;
+    }
 
-        return interpretResult(inputMat, boundary);
+    private synchronized ExecutorService getRansacExecutor() {
+        if (mRansacExecutor == null) {
+            int threads = Math.min(Runtime.getRuntime().availableProcessors(),
+                    RANSAC_MAX_THRESHOLD - RANSAC_MIN_THRESHOLD + 1);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            mRansacExecutor = executor;
+        }
+        return mRansacExecutor;
     }
 
     private Rect returnResultWindowRect(Mat inputMat) {
-        return new Rect(RESULT_WINDOW_X, RESULT_WINDOW_Y, RESULT_WINDOW_WIDTH, RESULT_WINDOW_HEIGHT);
+        return mProfile.resultWindow.clone();
     }
 
     /**
@@ -650,26 +1171,28 @@ public class ImageProcessor {
     private Rect checkFiducialKMeans(Mat inputMat) {
         // Initialize resources
         int k = 5;
-        Mat data = new Mat();
-        inputMat.convertTo(data, CV_32F);
-        cvtColor(data, data, COLOR_RGBA2RGB);
-        data = data.reshape(1, (int) data.total());
-        Mat centers = new Mat();
-        Mat labels = new Mat();
+        Mat floatRGBA = mPool.get("kmeansFloatRGBA");
+        Mat floatRGB = mPool.get("kmeansFloatRGB");
+        inputMat.convertTo(floatRGBA, CV_32F);
+        cvtColor(floatRGBA, floatRGB, COLOR_RGBA2RGB);
+        Mat samples = floatRGB.reshape(1, (int) floatRGB.total());
+        Mat centerRows = mPool.get("kmeansCenters");
+        Mat labels = mPool.get("kmeansLabels");
 
         // Perform k-means in RGB
         TermCriteria criteria = new TermCriteria(TermCriteria.EPS+TermCriteria.MAX_ITER, 100, 1.0);
-        kmeans(data, k, labels, criteria, 10, KMEANS_PP_CENTERS, centers);
+        kmeans(samples, k, labels, criteria, 10, KMEANS_PP_CENTERS, centerRows);
 
         // Extract results and place them in data structures
-        centers = centers.reshape(3, centers.rows());
-        data = data.reshape(3, data.rows());
-        for (int i = 0; i < data.rows(); i++) {
+        Mat centers = centerRows.reshape(3, centerRows.rows());
+        Mat pixels = samples.reshape(3, samples.rows());
+        for (int i = 0; i < pixels.rows(); i++) {
             int centerId = (int) labels.get(i,0)[0];
-            data.put(i, 0, centers.get(centerId,0));
+            pixels.put(i, 0, centers.get(centerId,0));
         }
-        data = data.reshape(3, inputMat.rows());
-        data.convertTo(data, CV_8UC3);
+        Mat clustered = pixels.reshape(3, inputMat.rows());
+        Mat data = mPool.get("kmeansClustered");
+        clustered.convertTo(data, CV_8UC3);
 
         // Identify center with darkest value
         double[] minCenter = new double[3];
@@ -684,15 +1207,14 @@ public class ImageProcessor {
 
         // Convert to lightness value and binarize the image according to that threshold
         double thresh = 0.299 * minCenter[0] + 0.587 * minCenter[1] + 0.114 * minCenter[2] + 20.0;
-        cvtColor(data, data, COLOR_RGB2GRAY);
-        Mat threshold = new Mat();
-        Imgproc.threshold(data, threshold, thresh, 255, THRESH_BINARY_INV);
+        Mat grey = mPool.get("kmeansGrey");
+        cvtColor(data, grey, COLOR_RGB2GRAY);
+        Mat threshold = mPool.get("kmeansThreshold");
+        Imgproc.threshold(grey, threshold, thresh, 255, THRESH_BINARY_INV);
 
         // Clean up the mask
-        Mat element_erode = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(5, 5));
-        Mat element_dilate = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(20, 20));
-        Imgproc.erode(threshold, threshold, element_erode);
-        Imgproc.dilate(threshold, threshold, element_dilate);
+        Imgproc.erode(threshold, threshold, mErodeElement);
+        Imgproc.dilate(threshold, threshold, mDilateElement);
         Imgproc.GaussianBlur(threshold, threshold, new Size(5, 5), 2, 2);
 
         // Identify large blobs
@@ -700,13 +1222,99 @@ public class ImageProcessor {
         Mat hierarchy = new Mat();
         Imgproc.findContours(threshold, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE, new Point(0, 0));
 
-        // Draw rectangles around the blobs and see if their position makes sense
+        // Draw rectangles around the blobs
+        List<Rect> blobs = new ArrayList<>();
+        for (int i = 0; i < contours.size(); i++)
+            blobs.add(Imgproc.boundingRect(contours.get(i)));
+
+        // Release resources; the reshaped headers share data with the scratch Mats
+        samples.release();
+        centers.release();
+        pixels.release();
+        clustered.release();
+        hierarchy.release();
+        for (MatOfPoint contour : contours)
+            contour.release();
+
+        return getResultWindowRect(blobs, inputMat.size());
+    }
+
+    /**
+     * Uses column and row projections of the dark pixels to find the fiducials, avoiding the
+     * per-pixel clustering of {@link #checkFiducialKMeans(Mat)}
+     * @param inputMat: the perspective-corrected RDT
+     * @return the result window, or an empty Rect if the fiducials are not where we expected
+     */
+    private Rect checkFiducialProjection(Mat inputMat) {
+        // Binarize relative to the darkest part of the strip, like the darkest k-means cluster
+        Mat grey = mPool.get("projectionGrey");
+        cvtColor(inputMat, grey, Imgproc.COLOR_RGBA2GRAY);
+        Mat hist = mPool.get("projectionHist");
+        Imgproc.calcHist(Arrays.asList(grey), mHistChannels, mEmptyMask, hist, mHistSize, mHistRanges);
+        float[] counts = new float[HIST_SIZE];
+        hist.get(0, 0, counts);
+        double darkCount = grey.total() * FIDUCIAL_DARK_FRACTION;
+        int darkest = 0;
+        float sum = counts[0];
+        while (darkest < HIST_SIZE - 1 && sum < darkCount)
+            sum += counts[++darkest];
+        Mat threshold = mPool.get("projectionThreshold");
+        Imgproc.threshold(grey, threshold, darkest + FIDUCIAL_DARK_MARGIN, 1, THRESH_BINARY_INV);
+
+        // Columns with enough dark pixels to be part of a fiducial
+        Mat columns = mPool.get("projectionColumns");
+        Core.reduce(threshold, columns, 0, Core.REDUCE_SUM, CvType.CV_32S);
+        int[] columnCounts = new int[columns.cols()];
+        columns.get(0, 0, columnCounts);
+
+        // Group neighbouring dark columns into bands and find the rows each band covers.
+        // Bands are padded afterwards, so a column only needs half the fiducial height.
+        List<Rect> blobs = new ArrayList<>();
+        Mat rows = mPool.get("projectionRows");
+        int start = -1;
+        for (int i = 0; i <= columnCounts.length; i++) {
+            boolean dark = i < columnCounts.length && columnCounts[i] >= FIDUCIAL_MIN_HEIGHT / 2;
+            if (dark && start < 0) {
+                start = i;
+            } else if (!dark && start >= 0) {
+                Mat band = threshold.colRange(start, i);
+                Core.reduce(band, rows, 1, Core.REDUCE_MAX, -1);
+                byte[] rowMax = new byte[rows.rows()];
+                rows.get(0, 0, rowMax);
+                int top = 0, bottom = rowMax.length - 1;
+                while (top < rowMax.length && rowMax[top] == 0)
+                    top++;
+                while (bottom > top && rowMax[bottom] == 0)
+                    bottom--;
+                band.release();
+
+                // Pad like the dilation of the k-means mask so both paths agree on the edges
+                if (top < rowMax.length) {
+                    int pad = FIDUCIAL_DILATE_SIZE / 2;
+                    Point tl = new Point(Math.max(start - pad, 0), Math.max(top - pad, 0));
+                    Point br = new Point(Math.min(i + pad, columnCounts.length), Math.min(bottom + 1 + pad, rowMax.length));
+                    blobs.add(new Rect(tl, br));
+                }
+                start = -1;
+            }
+        }
+
+        return getResultWindowRect(blobs, inputMat.size());
+    }
+
+    /**
+     * Keeps the blobs that look like fiducials and places the result window relative to them
+     * @param blobs: bounding boxes of the dark blobs on the perspective-corrected RDT
+     * @param size: the size of the perspective-corrected RDT
+     * @return the result window, or an empty Rect if the fiducials are not where we expected
+     */
+    private Rect getResultWindowRect(List<Rect> blobs, Size size) {
+        // See if the blobs' position makes sense
         List<Rect> fiducialRects = new ArrayList<>();
         Rect fiducialRect = new Rect(0, 0, 0, 0);
-        for (int i = 0; i < contours.size(); i++) {
-            Rect rect = Imgproc.boundingRect(contours.get(i));
+        for (Rect rect : blobs) {
             double rectPos = rect.x + rect.width;
-            if (FIDUCIAL_POSITION_MIN < rectPos && rectPos < FIDUCIAL_POSITION_MAX && FIDUCIAL_MIN_HEIGHT < rect.height &&
+            if (mProfile.fiducialPositionMin < rectPos && rectPos < mProfile.fiducialPositionMax && FIDUCIAL_MIN_HEIGHT < rect.height &&
                     FIDUCIAL_MIN_WIDTH < rect.width && rect.width < FIDUCIAL_MAX_WIDTH) {
                 fiducialRects.add(rect);
                 if (DEBUG_FLAG)
@@ -723,30 +1331,22 @@ public class ImageProcessor {
             // Calculate their midpoint, distance, scale, and offset
             int midpoint = (int) ((center0x + center1x) / 2);
             double diff = abs(center0x - center1x);
-            double scale = FIDUCIAL_DISTANCE == 0 ? 1 : diff / FIDUCIAL_DISTANCE;
-            double offset = scale * FIDUCIAL_TO_CONTROL_LINE_OFFSET;
+            double scale = mProfile.fiducialDistance == 0 ? 1 : diff / mProfile.fiducialDistance;
+            double offset = scale * mProfile.fiducialToControlLineOffset;
 
             // Generate a rectangle for the result window
             Point tl = new Point(midpoint + offset - RESULT_WINDOW_RECT_HEIGHT * scale / 2.0, RESULT_WINDOW_RECT_WIDTH_PADDING);
-            Point br = new Point(midpoint + offset + RESULT_WINDOW_RECT_HEIGHT * scale / 2.0, inputMat.size().height - RESULT_WINDOW_RECT_WIDTH_PADDING);
+            Point br = new Point(midpoint + offset + RESULT_WINDOW_RECT_HEIGHT * scale / 2.0, size.height - RESULT_WINDOW_RECT_WIDTH_PADDING);
             fiducialRect = new Rect(tl, br);
         }
 
-        // Release resources
-        labels.release();
-        centers.release();
-        data.release();
-        threshold.release();
-        element_erode.release();
-        element_dilate.release();
-
         return fiducialRect;
     }
 
     private Rect checkFiducialAndReturnResultWindowRect(Mat inputMat)  {
         if (FIDUCIAL_COUNT == 0) {
-            Point tl = new Point(FIDUCIAL_TO_CONTROL_LINE_OFFSET - RESULT_WINDOW_RECT_HEIGHT / 2.0, RESULT_WINDOW_RECT_WIDTH_PADDING);
-            Point br = new Point(FIDUCIAL_TO_CONTROL_LINE_OFFSET + RESULT_WINDOW_RECT_HEIGHT / 2.0, inputMat.size().height - RESULT_WINDOW_RECT_WIDTH_PADDING);
+            Point tl = new Point(mProfile.fiducialToControlLineOffset - RESULT_WINDOW_RECT_HEIGHT / 2.0, RESULT_WINDOW_RECT_WIDTH_PADDING);
+            Point br = new Point(mProfile.fiducialToControlLineOffset + RESULT_WINDOW_RECT_HEIGHT / 2.0, inputMat.size().height - RESULT_WINDOW_RECT_WIDTH_PADDING);
 
             Rect fiducialRect = new Rect(tl, br);
 
@@ -783,7 +1383,7 @@ public class ImageProcessor {
             for (int i = 0; i < contours.size(); i++) {
                 Rect rect = Imgproc.boundingRect(contours.get(i));
                 double rectCenter = rect.x + rect.width / 2.0;
-                if (FIDUCIAL_POSITION_MIN < rectCenter && rectCenter < FIDUCIAL_POSITION_MAX && FIDUCIAL_MIN_HEIGHT < rect.height && FIDUCIAL_MIN_WIDTH < rect.width && rect.width < FIDUCIAL_MAX_WIDTH) {
+                if (mProfile.fiducialPositionMin < rectCenter && rectCenter < mProfile.fiducialPositionMax && FIDUCIAL_MIN_HEIGHT < rect.height && FIDUCIAL_MIN_WIDTH < rect.width && rect.width < FIDUCIAL_MAX_WIDTH) {
                     fiducialRects.add(rect);
                     if (DEBUG_FLAG)
                         Log.d(TAG, String.format("Control line rect size: %s %s %s", rect.tl(), rect.br(), rect.size()));
@@ -801,8 +1401,8 @@ public class ImageProcessor {
                 int midpoint = (int) ((center0 + center1) / 2);
                 double diff = abs(center0 - center1);
 
-                double scale = FIDUCIAL_DISTANCE == 0 ? 1 : diff / FIDUCIAL_DISTANCE;
-                double offset = scale * FIDUCIAL_TO_CONTROL_LINE_OFFSET;
+                double scale = mProfile.fiducialDistance == 0 ? 1 : diff / mProfile.fiducialDistance;
+                double offset = scale * mProfile.fiducialToControlLineOffset;
 
                 Point tl = new Point(midpoint + offset - RESULT_WINDOW_RECT_HEIGHT * scale / 2.0, RESULT_WINDOW_RECT_WIDTH_PADDING);
                 Point br = new Point(midpoint + offset + RESULT_WINDOW_RECT_HEIGHT * scale / 2.0, inputMat.size().height - RESULT_WINDOW_RECT_WIDTH_PADDING);
@@ -822,47 +1422,25 @@ public class ImageProcessor {
         }
     }
 
-    private boolean readLine(Mat inputMat, Point position, boolean isControlLine) {
-        Mat hls = new Mat();
-        cvtColor(inputMat, hls, Imgproc.COLOR_RGBA2RGB);
-        cvtColor(hls, hls, Imgproc.COLOR_RGB2HLS);
-
-        List<Mat> channels = new ArrayList<>();
-        Core.split(hls, channels);
-
+    /**
+     * Looks for a line around a position using the shared lightness profile of the result window
+     * @param profile: the column profile of the result window
+     * @param position: the expected location of the line
+     * @param isControlLine: whether the control line's peak threshold applies
+     * @return whether a line is present
+     */
+    private boolean readLine(LineProfile profile, Point position, boolean isControlLine) {
         int lower_bound = (int)(position.x-LINE_SEARCH_WIDTH < 0 ? 0 : position.x-LINE_SEARCH_WIDTH);
         int upper_bound = (int)(position.x+LINE_SEARCH_WIDTH);
-        upper_bound = upper_bound > channels.get(1).cols() ? channels.get(1).cols() : upper_bound;
-
-        float[] avgIntensities = new float[upper_bound-lower_bound];
-        float[] avgHues = new float[upper_bound-lower_bound];
-        float[] avgSats = new float[upper_bound-lower_bound];
+        upper_bound = upper_bound > profile.getWidth() ? profile.getWidth() : upper_bound;
 
         float min = Float.MAX_VALUE, max = Float.MIN_VALUE;
-        int minIndex, maxIndex;
-
         for (int i = lower_bound; i < upper_bound; i++) {
-            float sumIntensity=0;
-            float sumHue=0;
-            float sumSat=0;
-            for (int j = 0; j < channels.get(1).rows(); j++) {
-                sumIntensity+=channels.get(1).get(j, i)[0];
-                sumHue+=channels.get(0).get(j, i)[0];
-                sumSat+=channels.get(2).get(j, i)[0];
-            }
-            avgIntensities[i-lower_bound] = sumIntensity/channels.get(1).rows();
-            avgHues[i-lower_bound] = sumHue/channels.get(0).rows();
-            avgSats[i-lower_bound] = sumSat/channels.get(2).rows();
-
-            if (avgIntensities[i-lower_bound] < min) {
-                min = avgIntensities[i-lower_bound];
-                minIndex = i-lower_bound;
-            }
-
-            if (avgIntensities[i-lower_bound] > max) {
-                max = avgIntensities[i-lower_bound];
-                maxIndex = i-lower_bound;
-            }
+            float intensity = profile.lightness[i];
+            if (intensity < min)
+                min = intensity;
+            if (intensity > max)
+                max = intensity;
         }
 
         if (isControlLine) {
@@ -872,12 +1450,25 @@ public class ImageProcessor {
         }
     }
 
-    private boolean readControlLine(Mat inputMat, Point position) {
-        return readLine(inputMat, position, true);
+    /**
+     * Reads the control line and both test lines from a result window profile
+     * @param profile: the column profile of the result window
+     * @return whether the control, test A, and test B lines are present, in that order
+     */
+    public boolean[] readLines(LineProfile profile) {
+        return new boolean[] {
+                readControlLine(profile, new Point(mProfile.controlLinePosition, 0)),
+                readTestLine(profile, new Point(mProfile.testALinePosition, 0)),
+                readTestLine(profile, new Point(mProfile.testBLinePosition, 0))
+        };
     }
 
-    private boolean readTestLine(Mat inputMat, Point position) {
-        return readLine(inputMat, position, false);
+    private boolean readControlLine(LineProfile profile, Point position) {
+        return readLine(profile, position, true);
+    }
+
+    private boolean readTestLine(LineProfile profile, Point position) {
+        return readLine(profile, position, false);
     }
 
 
@@ -892,23 +1483,18 @@ public class ImageProcessor {
      * @return the cropped, perspective corrected RDT
      */
     private Mat cropRDT(Mat inputMat, MatOfPoint2f boundary) {
-        // Get template corners
-        Mat refBoundary = new Mat(4, 1, CvType.CV_32FC2);
-        double[] a = new double[]{0, 0};
-        double[] b = new double[]{mRefImg.cols() - 1, 0};
-        double[] c = new double[]{mRefImg.cols() - 1, mRefImg.rows() - 1};
-        double[] d = new double[]{0, mRefImg.rows() - 1};
-        refBoundary.put(0, 0, a);
-        refBoundary.put(1, 0, b);
-        refBoundary.put(2, 0, c);
-        refBoundary.put(3, 0, d);
-
-        // Apply the inverse transform transform to correct the perspective of the RDT
-        Mat M = getPerspectiveTransform(boundary, refBoundary);
-        Mat correctedMat = new Mat(mRefImg.rows(), mRefImg.cols(), mRefImg.type());
-        warpPerspective(inputMat, correctedMat, M, new Size(mRefImg.cols(), mRefImg.rows()));
-        resize(correctedMat, correctedMat, new Size(), 1/REF_IMAGE_SCALE, 1/REF_IMAGE_SCALE, Imgproc.INTER_LINEAR);
+        long startTime = System.nanoTime();
+
+        // Apply the inverse transform to correct the perspective of the RDT, warping straight
+        // to the output size instead of warping to the reference size and resizing
+        Mat M = getPerspectiveTransform(boundary, mWarpCorners);
+        Mat correctedMat = new Mat();
+        warpPerspective(inputMat, correctedMat, M, mWarpSize);
+
+        // Release resources
+        M.release();
 
+        mMetrics.histogram(MetricsRegistry.CROP_RDT).record(System.nanoTime() - startTime);
         return correctedMat;
     }
 
@@ -918,20 +1504,62 @@ public class ImageProcessor {
      * @return the cropped, perspective corrected test window
      */
     private Mat cropResultWindow(Mat correctedMat) {
-        // Apply k-means to ensure that the fiducials are in place
+        return cropResultWindow(correctedMat, findResultWindow(correctedMat));
+    }
+
+    /**
+     * Checks for fiducials on the perspective-corrected RDT
+     * @param correctedMat: the input image
+     * @return the result window, or an empty Rect if the fiducials are not where we expected
+     */
+    private Rect findResultWindow(Mat correctedMat) {
+        long startTime = System.nanoTime();
+
+        // Ensure that the fiducials are in place
 //        Rect resultWindowRect = checkFiducialAndReturnResultWindowRect(correctedMat);
 //        Rect resultWindowRect = returnResultWindowRect(correctedMat);
-        Rect resultWindowRect = checkFiducialKMeans(correctedMat);
+        long stageTime = startStage();
+        Rect resultWindowRect = checkFiducial(correctedMat, mFiducialMethod);
+        endStage(FrameProfiler.STAGE_FIDUCIAL, stageTime);
+
+        if (resultWindowRect.width > 0 && resultWindowRect.height > 0)
+            mMetrics.counter(MetricsRegistry.RESULT_WINDOW_FOUND).increment();
+        mMetrics.histogram(MetricsRegistry.CROP_RESULT_WINDOW).record(System.nanoTime() - startTime);
+        return resultWindowRect;
+    }
 
+    /**
+     * @param correctedMat: the perspective-corrected RDT
+     * @param resultWindowRect: the result window found by findResultWindow
+     * @return the cropped, perspective corrected test window
+     */
+    private Mat cropResultWindow(Mat correctedMat, Rect resultWindowRect) {
         // Provide the cropped result window if everything is successful
-        correctedMat = new Mat(correctedMat, resultWindowRect);
-        if (correctedMat.width() > 0 && correctedMat.height() > 0) {
+        Mat resultMat = new Mat(correctedMat, resultWindowRect);
+        if (resultMat.width() > 0 && resultMat.height() > 0) {
             if (DEBUG_FLAG)
                 Log.d(TAG, "Result RECT: " + resultWindowRect.toString());
-            resize(correctedMat, correctedMat, new Size(RESULT_WINDOW_RECT_HEIGHT,
-                    mRefImg.rows()/REF_IMAGE_SCALE - 2*RESULT_WINDOW_RECT_WIDTH_PADDING));
+            resize(resultMat, resultMat, new Size(RESULT_WINDOW_RECT_HEIGHT,
+                    mRefSize.height/REF_IMAGE_SCALE - 2*RESULT_WINDOW_RECT_WIDTH_PADDING));
+        }
+        return resultMat;
+    }
+
+    /**
+     * Attempts to identify the bounding box around the RDT within the input image with the given
+     * detector, without tracking or any of the quality checks
+     * @param detector: the feature detector to use
+     * @param greyMat: the luma of the input image
+     * @return boundary: the MatOfPoint2f bounding box around the identified RDT, empty if not found
+     */
+    MatOfPoint2f detectRDT(Detector detector, Mat greyMat) {
+        switch (detector) {
+            case BRISK:
+                return detectRDT(greyMat);
+            case SIFT:
+            default:
+                return detectRDTWithSIFT(new LumaPyramid(greyMat, mPool), 5, FRAME_IMAGE_SCALE);
         }
-        return correctedMat;
     }
 
     /**
@@ -1031,20 +1659,9 @@ public class ImageProcessor {
 
         // If the homography is valid, map corners of template into input image
         if (H.cols() >= 3 && H.rows() >= 3) {
-            // Get template corners
-            Mat objCorners = new Mat(4, 1, CvType.CV_32FC2);
-            double[] a = new double[]{0, 0};
-            double[] b = new double[]{mRefImg.cols() - 1, 0};
-            double[] c = new double[]{mRefImg.cols() - 1, mRefImg.rows() - 1};
-            double[] d = new double[]{0, mRefImg.rows() - 1};
-            objCorners.put(0, 0, a);
-            objCorners.put(1, 0, b);
-            objCorners.put(2, 0, c);
-            objCorners.put(3, 0, d);
-
-            // Apply transform to get corresponding corners in input image
+            // Apply transform to get corresponding corners of the template in input image
             Mat sceneCorners = new Mat(4, 1, CvType.CV_32FC2);
-            perspectiveTransform(objCorners, sceneCorners, H);
+            perspectiveTransform(mRefCorners, sceneCorners, H);
             if (DEBUG_FLAG)
                 Log.d(TAG, String.format("transformed -- BRISK: (%.2f, %.2f) (%.2f, %.2f) (%.2f, %.2f) (%.2f, %.2f), width: %d, height: %d",
                         sceneCorners.get(0, 0)[0], sceneCorners.get(0, 0)[1],
@@ -1061,7 +1678,6 @@ public class ImageProcessor {
             boundary.fromList(listOfBoundary);
 
             // Release resources
-            objCorners.release();
             sceneCorners.release();
 
             RotatedRect rotatedRect = minAreaRect(boundary);
@@ -1094,75 +1710,79 @@ public class ImageProcessor {
 
     /**
      * Attempts to identify the bounding box around the RDT within the input image using SIFT, if it is there
-     * @param inputMat: the input image
+     * @param pyramid: the luma pyramid of the input image
      * @param ransac: the ransac reprojection error threshold // TODO is this needed?
+     * @param frameScale: how far to downsample the image before SIFT detection
      * @return boundary: the MatOfPoint2f bounding box around the identified RDT
      */
-    private MatOfPoint2f detectRDTWithSIFT(Mat inputMat, int ransac) {
+    private MatOfPoint2f detectRDTWithSIFT(LumaPyramid pyramid, int ransac, double frameScale) {
         // Initialize data structures and start timer
-        double startTime = System.currentTimeMillis();
-        Mat inDescriptor = new Mat();
-        MatOfKeyPoint inKeypoints = new MatOfKeyPoint();
-        MatOfPoint2f boundary = new MatOfPoint2f();
+        long startTime = System.nanoTime();
+        MatOfPoint2f boundary;
 
-        // Downsample the image to save time
-        Mat scaledMat = new Mat();
-        Imgproc.resize(inputMat, scaledMat, new Size(), FRAME_IMAGE_SCALE, FRAME_IMAGE_SCALE, Imgproc.INTER_LINEAR);
+        SiftMatches matches = matchSiftFeatures(pyramid, frameScale);
+        if (matches == null) {
+            boundary = new MatOfPoint2f();
+        } else {
+            boundary = estimateBoundary(matches, ransac);
+            matches.release();
+        }
 
-        // Create a mask for where to generate features
-        // TODO: can we make this tighter regardless of OpenCV's bug?
-        Point tl = new Point(scaledMat.size().height*(1-VIEW_FINDER_SCALE_W/CROP_RATIO)/2, 0);
-        Point br = new Point(scaledMat.size().width-tl.x, scaledMat.height());
-        Rect roi = new Rect(tl, br);
-        Mat croppedMat = scaledMat.submat(roi);
+        long latency = System.nanoTime() - startTime;
+        mMetrics.histogram(MetricsRegistry.DETECT_RDT_WITH_SIFT).record(latency);
+        if (boundary.size().width > 0 && boundary.size().height > 0)
+            mMetrics.counter(MetricsRegistry.SIFT_FOUND).increment();
+        if (DEBUG_FLAG)
+            Log.d(TAG, "Detect RDT TIME: " + latency / 1000000);
+        return boundary;
+    }
 
-        Mat mask = new Mat(croppedMat.cols(), croppedMat.rows(), CV_8U, new Scalar(0));
-        Point p1 = new Point(0, croppedMat.size().height*(1-VIEW_FINDER_SCALE_W/CROP_RATIO)/2);
-        Point p2 = new Point(croppedMat.size().width-p1.x, croppedMat.size().height-p1.y);
-        Imgproc.rectangle(mask, p1, p2, new Scalar(255), -1);
+    /**
+     * The matched points of the reference image and a frame, which only depend on the frame, so
+     * they can be used for homographies with any RANSAC threshold
+     */
+    private static class SiftMatches {
+        final MatOfPoint2f objMat;
+        final MatOfPoint2f sceneMat;
+        final Point offset;
+        final double scale;
+
+        SiftMatches(MatOfPoint2f objMat, MatOfPoint2f sceneMat, Point offset, double scale) {
+            this.objMat = objMat;
+            this.sceneMat = sceneMat;
+            this.offset = offset;
+            this.scale = scale;
+        }
 
-        // Compute features and descriptors
-        siftDetector.detectAndCompute(croppedMat, mask, inKeypoints, inDescriptor);
+        void release() {
+            objMat.release();
+            sceneMat.release();
+        }
+    }
+
+    /**
+     * Computes the SIFT features of the input image and matches them to the reference image
+     * @param pyramid: the luma pyramid of the input image
+     * @param frameScale: how far to downsample the image before SIFT detection
+     * @return the matched points, or null if there are not enough good matches
+     */
+    private SiftMatches matchSiftFeatures(LumaPyramid pyramid, double frameScale) {
+        Mat inDescriptor = mPool.get("siftDescriptor");
+        MatOfKeyPoint inKeypoints = mPool.getKeyPoints("siftKeypoints");
+        Point tl = extractSiftFeatures(pyramid, frameScale, inKeypoints, inDescriptor);
 
         // Break early if no features found
         if (inDescriptor.size().equals(new Size(0,0)) ||
                 siftRefDescriptor.size().equals(new Size(0,0))) {
-            inDescriptor.release();
-            inKeypoints.release();
-            scaledMat.release();
-            croppedMat.release();
-            mask.release();
-            return boundary;
+            return null;
         }
 
-        // Compute matches
-        List<MatOfDMatch> matches = new ArrayList<>();
-        siftMatcher.knnMatch(siftRefDescriptor, inDescriptor, matches, 2, new Mat(), false);
-
-        // Save only the good matches
-        ArrayList<DMatch> goodMatches = new ArrayList<>();
-        for (int i = 0; i < matches.size(); i++) {
-            DMatch[] dMatches = matches.get(i).toArray();
-            if (dMatches.length >= 2) {
-                DMatch m = dMatches[0];
-                DMatch n = dMatches[1];
-                if (m.distance <= 0.80 * n.distance) {
-                    goodMatches.add(m);
-                }
-            }
-        }
-        MatOfDMatch goodMatchesMat = new MatOfDMatch();
-        goodMatchesMat.fromList(goodMatches);
+        // Compute matches and save only the good ones
+        List<DMatch> goodMatches = siftMatcher.match(inDescriptor);
 
         // Break early if not enough good matches
         if (goodMatches.size() <= GOOD_MATCH_COUNT) {
-            inDescriptor.release();
-            inKeypoints.release();
-            scaledMat.release();
-            croppedMat.release();
-            mask.release();
-            goodMatchesMat.release();
-            return boundary;
+            return null;
         }
 
         // Put KeyPoints from Mats into Lists
@@ -1182,25 +1802,68 @@ public class ImageProcessor {
         objMat.fromList(objList);
         sceneMat.fromList(sceneList);
 
+        return new SiftMatches(objMat, sceneMat, tl, frameScale);
+    }
+
+    /**
+     * Computes the SIFT features of the viewfinder area of the input image
+     * @param pyramid: the luma pyramid of the input image
+     * @param frameScale: how far to downsample the image before SIFT detection
+     * @param keypoints: the keypoints of the frame, relative to the cropped image
+     * @param descriptor: the descriptors of the keypoints
+     * @return the offset of the cropped image within the downsampled image
+     */
+    Point extractSiftFeatures(LumaPyramid pyramid, double frameScale, MatOfKeyPoint keypoints, Mat descriptor) {
+        // Downsample the image to save time, starting from the closest pyramid level
+        int level = LumaPyramid.getCoarsestLevel(frameScale);
+        Mat levelMat = pyramid.getLevel(level);
+        double residualScale = frameScale / LumaPyramid.getScale(level);
+        Mat scaledMat;
+        if (Math.abs(residualScale - 1) < 1e-6) {
+            scaledMat = levelMat;
+        } else {
+            scaledMat = mPool.get("siftScaled");
+            Imgproc.resize(levelMat, scaledMat, new Size(), residualScale, residualScale, Imgproc.INTER_LINEAR);
+        }
+
+        // Create a mask for where to generate features
+        // TODO: can we make this tighter regardless of OpenCV's bug?
+        Point tl = new Point(scaledMat.size().height*(1-VIEW_FINDER_SCALE_W/CROP_RATIO)/2, 0);
+        Point br = new Point(scaledMat.size().width-tl.x, scaledMat.height());
+        Rect roi = new Rect(tl, br);
+        Mat croppedMat = scaledMat.submat(roi);
+
+        Mat mask = mPool.get("siftMask");
+        mask.create(croppedMat.cols(), croppedMat.rows(), CV_8U);
+        mask.setTo(new Scalar(0));
+        Point p1 = new Point(0, croppedMat.size().height*(1-VIEW_FINDER_SCALE_W/CROP_RATIO)/2);
+        Point p2 = new Point(croppedMat.size().width-p1.x, croppedMat.size().height-p1.y);
+        Imgproc.rectangle(mask, p1, p2, new Scalar(255), -1);
+
+        // Compute features and descriptors
+        siftDetector.detectAndCompute(croppedMat, mask, keypoints, descriptor);
+        croppedMat.release();
+        return tl;
+    }
+
+    /**
+     * Maps the reference image's corners into the input image with a homography of the matches.
+     * Only reads the matches, so it can run for several thresholds at once.
+     * @param matches: the matched points of the input image
+     * @param ransac: the ransac reprojection error threshold
+     * @return boundary: the MatOfPoint2f bounding box around the identified RDT
+     */
+    private MatOfPoint2f estimateBoundary(SiftMatches matches, int ransac) {
+        MatOfPoint2f boundary = new MatOfPoint2f();
+
         // Compute homography
-        Mat H = Calib3d.findHomography(objMat, sceneMat, Calib3d.RANSAC, ransac);
+        Mat H = Calib3d.findHomography(matches.objMat, matches.sceneMat, Calib3d.RANSAC, ransac);
 
         // If the homography is valid, map corners of template into input image
         if (H.cols() >= 3 && H.rows() >= 3) {
-            // Get template corners
-            Mat objCorners = new Mat(4, 1, CvType.CV_32FC2);
-            double[] a = new double[]{0, 0};
-            double[] b = new double[]{mRefImg.cols() - 1, 0};
-            double[] c = new double[]{mRefImg.cols() - 1, mRefImg.rows() - 1};
-            double[] d = new double[]{0, mRefImg.rows() - 1};
-            objCorners.put(0, 0, a);
-            objCorners.put(1, 0, b);
-            objCorners.put(2, 0, c);
-            objCorners.put(3, 0, d);
-
-            // Apply transform to get corresponding corners in input image
+            // Apply transform to get corresponding corners of the template in input image
             Mat sceneCorners = new Mat(4, 1, CvType.CV_32FC2);
-            perspectiveTransform(objCorners, sceneCorners, H);
+            perspectiveTransform(mRefCorners, sceneCorners, H);
             if (DEBUG_FLAG)
                 Log.d(TAG, String.format("transformed -- SIFT: (%.2f, %.2f) (%.2f, %.2f) (%.2f, %.2f) (%.2f, %.2f), width: %d, height: %d",
                         sceneCorners.get(0, 0)[0], sceneCorners.get(0, 0)[1],
@@ -1217,36 +1880,27 @@ public class ImageProcessor {
             boundary.fromList(listOfBoundary);
 
             // Release resources
-            objCorners.release();
             sceneCorners.release();
 
             // Properly orders the points depending on the orientation and
             // scales the points back to the original image's size
+            Point tl = matches.offset;
+            double frameScale = matches.scale;
             RotatedRect rotatedRect = minAreaRect(boundary);
             Point[] v = new Point[4];
             Point[] bound = new Point[4];
             rotatedRect.points(v);
             for (int i = 0; i < 4; i++) {
                 if (rotatedRect.angle < -45)
-                    bound[(i+2) % 4] = new Point((v[i].x+tl.x)/FRAME_IMAGE_SCALE, v[i].y/FRAME_IMAGE_SCALE);
+                    bound[(i+2) % 4] = new Point((v[i].x+tl.x)/frameScale, v[i].y/frameScale);
                 else
-                    bound[(i+3) % 4] = new Point((v[i].x+tl.x)/FRAME_IMAGE_SCALE, v[i].y/FRAME_IMAGE_SCALE);
+                    bound[(i+3) % 4] = new Point((v[i].x+tl.x)/frameScale, v[i].y/frameScale);
             }
             boundary.fromArray(bound);
         }
 
         // Release resources
-        inKeypoints.release();
-        inDescriptor.release();
-        scaledMat.release();
-        croppedMat.release();
-        mask.release();
-        goodMatchesMat.release();
-        objMat.release();
-        sceneMat.release();
         H.release();
-        if (DEBUG_FLAG)
-            Log.d(TAG, "Detect RDT TIME: " + (System.currentTimeMillis()-startTime));
         return boundary;
     }
 
@@ -1255,7 +1909,7 @@ public class ImageProcessor {
      * @param inputMat: the input image
      * @return a Rect object describing the viewfinder
      */
-    private Rect getViewfinderRect(Mat inputMat) {
+    Rect getViewfinderRect(Mat inputMat) {
         Point p1 = new Point(inputMat.size().width*(1-VIEW_FINDER_SCALE_H)/2,
                 inputMat.size().height*(1-VIEW_FINDER_SCALE_W)/2);
         Point p2 = new Point(inputMat.size().width-p1.x, inputMat.size().height-p1.y);
@@ -1286,6 +1940,9 @@ public class ImageProcessor {
     }
 
     private void drawKeypointsAndMatches(Mat inputMat, MatOfPoint boundary, MatOfKeyPoint inKeypoints, MatOfDMatch goodMatchesMat) {
+        if (mRefImg == null)
+            return;
+
         Mat resultMat = new Mat();
         MatOfPoint boundaryMat = new MatOfPoint();
         boundaryMat.fromList(boundary.toList());
@@ -1355,33 +2012,10 @@ public class ImageProcessor {
     }
 
     private Mat enhanceResultWindow(Mat input, MatOfPoint2f boundary) {
-        Mat refPoints = new Mat(4, 1, CvType.CV_32FC2);
-        Mat refResultPoints = new Mat(4, 1, CvType.CV_32FC2);
-
-        double[] a = new double[]{0, 0};
-        double[] b = new double[]{mRefImg.cols() - 1, 0};
-        double[] c = new double[]{mRefImg.cols() - 1, mRefImg.rows() - 1};
-        double[] d = new double[]{0, mRefImg.rows() - 1};
-
-        //get corners from object
-        refPoints.put(0, 0, a);
-        refPoints.put(1, 0, b);
-        refPoints.put(2, 0, c);
-        refPoints.put(3, 0, d);
-
-        a = new double[]{RESULT_WINDOW_X, RESULT_WINDOW_Y};
-        b = new double[]{RESULT_WINDOW_X+RESULT_WINDOW_WIDTH, RESULT_WINDOW_Y};
-        c = new double[]{RESULT_WINDOW_X+RESULT_WINDOW_WIDTH, RESULT_WINDOW_Y+RESULT_WINDOW_HEIGHT};
-        d = new double[]{RESULT_WINDOW_X, RESULT_WINDOW_Y+RESULT_WINDOW_HEIGHT};
-
-        refResultPoints.put(0, 0, a);
-        refResultPoints.put(1, 0, b);
-        refResultPoints.put(2, 0, c);
-        refResultPoints.put(3, 0, d);
-
-        Mat M = getPerspectiveTransform(refPoints, boundary);
+        Mat M = getPerspectiveTransform(mRefCorners, boundary);
         Mat imgResultPointsMat = new Mat();
-        perspectiveTransform(refResultPoints, imgResultPointsMat, M);
+        perspectiveTransform(mRefResultWindowCorners, imgResultPointsMat, M);
+        M.release();
 
         MatOfPoint imgResultPoints = new MatOfPoint();
 
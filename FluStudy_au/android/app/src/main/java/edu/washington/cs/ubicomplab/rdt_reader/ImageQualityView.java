@@ -31,7 +31,6 @@ import android.hardware.camera2.params.MeteringRectangle;
 import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.Image;
 import android.media.ImageReader;
-import android.os.AsyncTask;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.support.annotation.NonNull;
@@ -54,12 +53,8 @@ import android.widget.Toast;
 import org.opencv.android.BaseLoaderCallback;
 import org.opencv.android.LoaderCallbackInterface;
 
-import org.opencv.core.Mat;
-
 import java.util.Arrays;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
@@ -70,6 +65,8 @@ import static edu.washington.cs.ubicomplab.rdt_reader.Constants.*;
 
 public class ImageQualityView extends LinearLayout implements View.OnClickListener, ActivityCompat.OnRequestPermissionsResultCallback {
     private ImageProcessor processor;
+    private ResultConsensus mConsensus;
+    private volatile FramePipeline mPipeline;
     private Activity mActivity;
     private TextView mImageQualityFeedbackView;
     private TextView mProgressText;
@@ -294,8 +291,6 @@ public class ImageQualityView extends LinearLayout implements View.OnClickListen
 
     final Object focusStateLock = new Object();
 
-    final BlockingQueue<Image> imageQueue = new ArrayBlockingQueue<>(1);
-
     /**
      * This a callback object for the {@link ImageReader}. "onImageAvailable" will be called when a
      * still image is ready to be saved.
@@ -315,47 +310,64 @@ public class ImageQualityView extends LinearLayout implements View.OnClickListen
                 return;
             }
 
-            if (imageQueue.size() > 0) {
-                image.close();
-                return;
-            }
-
             //Log.d(TAG, "LOCAL FOCUS STATE: " + mFocusState + ", " + FocusState.FOCUSED);
-            if (mFocusState != FocusState.FOCUSED) {
+            if (mFocusState != FocusState.FOCUSED || mPipeline == null) {
                 image.close();
                 return;
             }
 
-            imageQueue.add(image);
-            new ImageProcessAsyncTask().execute(image);
+            mPipeline.submit(image);
         }
 
     };
 
-    private class ImageProcessAsyncTask extends AsyncTask<Image, Void, Void> {
+    /**
+     * Receives the frames coming out of the {@link FramePipeline}
+     */
+    private final FramePipeline.Listener mPipelineListener = new FramePipeline.Listener() {
 
         @Override
-        protected Void doInBackground(Image... images) {
-            Image image = images[0];
-            final Mat rgbaMat = ImageUtil.imageToRGBMat(image);
-            final ImageProcessor.CaptureResult captureResult = processor.captureRDT(rgbaMat);
-            //ImageProcessor.SizeResult sizeResult, boolean isCentered, boolean isRightOrientation, boolean isSharp, ImageProcessor.ExposureResult exposureResult
+        public void onFrameDetected(final ImageProcessor.CaptureResult captureResult) {
+            // Copy the feedback, since the capture result moves on to interpretation
+            final ImageProcessor.SizeResult sizeResult = captureResult.sizeResult;
+            final boolean isCentered = captureResult.isCentered;
+            final boolean isRightOrientation = captureResult.isRightOrientation;
+            final boolean isSharp = captureResult.isSharp;
+            final ImageProcessor.ExposureResult exposureResult = captureResult.exposureResult;
+            final ImageProcessor.QualityGate failedGate = captureResult.failedGate;
             mActivity.runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
-                    displayQualityResult(captureResult.sizeResult, captureResult.isCentered, captureResult.isRightOrientation, captureResult.isSharp, captureResult.exposureResult);
+                    displayQualityResult(sizeResult, isCentered, isRightOrientation, isSharp, exposureResult, failedGate);
                 }
             });
 
             Log.d(TAG, String.format("Capture time: %d", System.currentTimeMillis() - timeTaken));
             Log.d(TAG, String.format("Captured result: %b", captureResult.allChecksPassed));
+        }
 
-            ImageProcessor.InterpretationResult interpretationResult = null;
+        @Override
+        public void onFrameInterpreting(ImageProcessor.CaptureResult captureResult) {
+            // Frames still in flight after a result was reported are dropped
+            if (mPipeline.isPaused()) {
+                releaseCaptureResult(captureResult);
+                return;
+            }
+
+            // Passing frames feed the consensus instead of deciding the result on their own
             if (captureResult.allChecksPassed) {
                 Log.d(TAG, String.format("Captured MAT size: %s", captureResult.resultMat.size()));
-                if (mImageQualityViewListener != null) {
+                if (mConsensus.isEmpty() && mImageQualityViewListener != null) {
                     mImageQualityViewListener.onRDTInterpreting(System.currentTimeMillis() - timeTaken);
                 }
+                mConsensus.add(captureResult, processor.interpretResult(captureResult));
+                Log.d(TAG, String.format("Consensus frames: %d", mConsensus.getFrameCount()));
+            }
+
+            ImageProcessor.CaptureResult reportedCaptureResult = captureResult;
+            ImageProcessor.InterpretationResult interpretationResult = null;
+            if (mConsensus.isReady()) {
+                mPipeline.pause();
                 try {
                     mCameraOpenCloseLock.acquire();
                     if (null != mCaptureSession) {
@@ -369,39 +381,42 @@ public class ImageQualityView extends LinearLayout implements View.OnClickListen
                     mCameraOpenCloseLock.release();
                 }
 
-                //interpretation
-                interpretationResult = processor.interpretResult(captureResult.resultMat, captureResult.boundary);
-                image.close();
-            } else {
-                imageQueue.remove();
-                image.close();
+                // The latency budget can run out on a failing frame, which is then dropped
+                if (!captureResult.allChecksPassed) {
+                    releaseCaptureResult(captureResult);
+                }
+                mPipeline.resetTracking();
+                reportedCaptureResult = mConsensus.getCaptureResult();
+                interpretationResult = mConsensus.getInterpretationResult();
+                mConsensus.clear();
+            }
+
+            // Frames held by the consensus are reported once it is ready
+            if (captureResult.allChecksPassed && interpretationResult == null) {
+                return;
             }
-            rgbaMat.release();
 
             RDTDectedResult result = RDTDectedResult.CONTINUE;
             if (mImageQualityViewListener != null) {
                 result = mImageQualityViewListener.onRDTDetected(
-                        captureResult,
+                        reportedCaptureResult,
                         interpretationResult,
                         System.currentTimeMillis() - timeTaken
                 );
             }
-            if (captureResult.resultMat != null) {
-                captureResult.resultMat.release();
-            }
-            if (captureResult.croppedRDTMat != null) {
-                captureResult.croppedRDTMat.release();
-            }
+            releaseCaptureResult(reportedCaptureResult);
             if (interpretationResult != null &&
                     interpretationResult.resultMat != null) {
                 interpretationResult.resultMat.release();
             }
             if (result == RDTDectedResult.STOP) {
-                mOnImageAvailableThread.interrupt();
+                mPipeline.pause();
             }
-
-            return null;
         }
+    };
+
+    private static void releaseCaptureResult(ImageProcessor.CaptureResult captureResult) {
+        captureResult.release();
     }
 
     /**
@@ -681,6 +696,12 @@ public class ImageQualityView extends LinearLayout implements View.OnClickListen
         mOnImageAvailableThread = new HandlerThread("OnImageAvailableBackgroud");
         mOnImageAvailableThread.start();
         mOnImageAvailableHandler = new Handler(mOnImageAvailableThread.getLooper());
+
+        if (mPipeline != null) {
+            // Frames from before a pause are too old to fuse with the new ones
+            mConsensus.reset();
+            mPipeline.start();
+        }
     }
 
     /**
@@ -688,6 +709,10 @@ public class ImageQualityView extends LinearLayout implements View.OnClickListen
      */
     private void stopBackgroundThread() {
         Log.d(TAG, "Thread Quit Safely.");
+        if (mPipeline != null) {
+            mPipeline.stop();
+            mConsensus.reset();
+        }
         mBackgroundThread.quit();
         mOnImageAvailableThread.quit();
         try {
@@ -866,6 +891,10 @@ public class ImageQualityView extends LinearLayout implements View.OnClickListen
                 case LoaderCallbackInterface.SUCCESS: {
                     Log.i(TAG, "OpenCV loaded successfully");
                     processor = ImageProcessor.getInstance(mActivity);
+                    mConsensus = new ResultConsensus(processor);
+                    mPipeline = new FramePipeline(processor, mPipelineListener,
+                            GOVERNOR_ENABLED ? new FrameRateGovernor(mActivity) : null);
+                    mPipeline.start();
                 }
                 break;
                 default: {
@@ -949,7 +978,7 @@ public class ImageQualityView extends LinearLayout implements View.OnClickListen
 
     }
 
-    private void displayQualityResult(ImageProcessor.SizeResult sizeResult, boolean isCentered, boolean isRightOrientation, boolean isSharp, ImageProcessor.ExposureResult exposureResult) {
+    private void displayQualityResult(ImageProcessor.SizeResult sizeResult, boolean isCentered, boolean isRightOrientation, boolean isSharp, ImageProcessor.ExposureResult exposureResult, ImageProcessor.QualityGate failedGate) {
         if (!showFeedback) {
             return;
         }
@@ -961,7 +990,7 @@ public class ImageQualityView extends LinearLayout implements View.OnClickListen
         }
 
         if (currFocusState == FocusState.FOCUSED) {
-            String[] qChecks = processor.getQualityCheckText(sizeResult, isCentered, isRightOrientation, isSharp, exposureResult);
+            String[] qChecks = processor.getQualityCheckText(sizeResult, isCentered, isRightOrientation, isSharp, exposureResult, failedGate);
             String message = String.format(getResources().getString(R.string.quality_msg_format_text), qChecks[0], qChecks[1], qChecks[2], qChecks[3]);
 
             mInstructionText.setText(getResources().getText(processor.getInstructionText(sizeResult, isCentered, isRightOrientation)));
@@ -71,19 +71,31 @@ public final class ImageUtil {
 
     public static Mat imageToRGBMat(Image image) {
         Mat yuvMat = imageToMat(image);
-        Mat bgrMat = new Mat(image.getHeight(), image.getWidth(), CvType.CV_8UC4);
         image.close();
-        Imgproc.cvtColor(yuvMat, bgrMat, Imgproc.COLOR_YUV2BGR_I420);
         Mat rgbaMat = new Mat();
-        Imgproc.cvtColor(bgrMat, rgbaMat, Imgproc.COLOR_BGR2RGBA, 0);
+        Imgproc.cvtColor(yuvMat, rgbaMat, Imgproc.COLOR_YUV2RGBA_I420);
 
         yuvMat.release();
-        bgrMat.release();
 
         return rgbaMat;
     }
 
     public static Mat imageToMat(Image image) {
+        Mat mat = new Mat(image.getHeight() + image.getHeight() / 2, image.getWidth(), CvType.CV_8UC1);
+        byte[] rowData = new byte[image.getPlanes()[0].getRowStride()];
+        copyToI420(image, mat, rowData);
+
+        return mat;
+    }
+
+    /**
+     * Packs the planes of a YUV_420_888 image into I420 order, a row at a time, so the pixels go
+     * through a buffer that stays in cache instead of a frame-sized array
+     * @param image: the camera frame
+     * @param yuvMat: the destination, a continuous CV_8UC1 Mat of 3/2 the image's height
+     * @param rowData: scratch space for one row of interleaved chroma, at least a row stride long
+     */
+    static void copyToI420(Image image, Mat yuvMat, byte[] rowData) {
         ByteBuffer buffer;
         int rowStride;
         int pixelStride;
@@ -92,45 +104,48 @@ public final class ImageUtil {
         int offset = 0;
 
         Image.Plane[] planes = image.getPlanes();
-        byte[] data = new byte[image.getWidth() * image.getHeight() * ImageFormat.getBitsPerPixel(ImageFormat.YUV_420_888) / 8];
-        byte[] rowData = new byte[planes[0].getRowStride()];
-
         for (int i = 0; i < planes.length; i++) {
             buffer = planes[i].getBuffer();
             rowStride = planes[i].getRowStride();
             pixelStride = planes[i].getPixelStride();
             int w = (i == 0) ? width : width / 2;
             int h = (i == 0) ? height : height / 2;
+
+            // Unpadded planar data can be copied in chunks as long as the scratch row
+            if (pixelStride == 1 && rowStride == w) {
+                int end = offset + w * h;
+                while (offset < end) {
+                    int length = Math.min(rowData.length, end - offset);
+                    buffer.get(rowData, 0, length);
+                    yuvMat.put(offset / width, offset % width, rowData, 0, length);
+                    offset += length;
+                }
+                continue;
+            }
+
             for (int row = 0; row < h; row++) {
-                int bytesPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.YUV_420_888) / 8;
-                if (pixelStride == bytesPerPixel) {
-                    int length = w * bytesPerPixel;
-                    buffer.get(data, offset, length);
+                if (pixelStride == 1) {
+                    buffer.get(rowData, 0, w);
 
                     if (h - row != 1) {
-                        buffer.position(buffer.position() + rowStride - length);
+                        buffer.position(buffer.position() + rowStride - w);
                     }
-                    offset += length;
                 } else {
-
-
                     if (h - row == 1) {
                         buffer.get(rowData, 0, width - pixelStride + 1);
                     } else {
                         buffer.get(rowData, 0, rowStride);
                     }
 
+                    // Packs the row in place, which never overwrites a sample it still has to read
                     for (int col = 0; col < w; col++) {
-                        data[offset++] = rowData[col * pixelStride];
+                        rowData[col] = rowData[col * pixelStride];
                     }
                 }
+                yuvMat.put(offset / width, offset % width, rowData, 0, w);
+                offset += w;
             }
         }
-
-        Mat mat = new Mat(height + height / 2, width, CvType.CV_8UC1);
-        mat.put(0, 0, data);
-
-        return mat;
     }
 
     public static String matToBase64(Mat mat) {
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+/**
+ * A single-item hand-off between two pipeline stages where the newest item wins. Offering an
+ * item while the previous one has not been taken yet replaces it, and the replaced item is
+ * handed back so the producer can release it.
+ */
+public class LatestSlot<T> {
+    private final String mName;
+    private T mItem;
+    private long mOfferedCount = 0;
+    private long mDroppedCount = 0;
+
+    public LatestSlot(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @param item: the item to hand off
+     * @return the item it replaced, or null if the slot was empty
+     */
+    public synchronized T offer(T item) {
+        T dropped = mItem;
+        mItem = item;
+        mOfferedCount++;
+        if (dropped != null)
+            mDroppedCount++;
+        notifyAll();
+        return dropped;
+    }
+
+    /**
+     * Waits for an item and removes it from the slot
+     * @return the newest item
+     */
+    public synchronized T take() throws InterruptedException {
+        while (mItem == null)
+            wait();
+        T item = mItem;
+        mItem = null;
+        return item;
+    }
+
+    /**
+     * @return the item waiting in the slot, or null, leaving the slot empty
+     */
+    public synchronized T clear() {
+        T item = mItem;
+        mItem = null;
+        return item;
+    }
+
+    /**
+     * @return the number of items waiting, either 0 or 1
+     */
+    public synchronized int getDepth() {
+        return mItem == null ? 0 : 1;
+    }
+
+    public synchronized long getOfferedCount() {
+        return mOfferedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+}
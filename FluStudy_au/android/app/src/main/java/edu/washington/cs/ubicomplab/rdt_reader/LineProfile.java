@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column-wise hue, lightness, and saturation averages of the result window. The window is
+ * converted to HLS and reduced to a single row once, so the control line and both test lines
+ * read from the same profile instead of walking the pixels themselves.
+ */
+public class LineProfile {
+    public final float[] hue;
+    public final float[] lightness;
+    public final float[] saturation;
+
+    public LineProfile(float[] hue, float[] lightness, float[] saturation) {
+        this.hue = hue;
+        this.lightness = lightness;
+        this.saturation = saturation;
+    }
+
+    /**
+     * @param resultMat: the RGBA result window with the lines running vertically
+     * @return the average of each HLS channel for every column of the window
+     */
+    public static LineProfile compute(Mat resultMat) {
+        Mat hls = new Mat();
+        Imgproc.cvtColor(resultMat, hls, Imgproc.COLOR_RGB2HLS);
+
+        // Average every column down to a single row of interleaved H, L, S values
+        Mat averages = new Mat();
+        Core.reduce(hls, averages, 0, Core.REDUCE_AVG, CvType.CV_32F);
+        int cols = averages.cols();
+        float[] interleaved = new float[cols * 3];
+        averages.get(0, 0, interleaved);
+
+        float[] hue = new float[cols];
+        float[] lightness = new float[cols];
+        float[] saturation = new float[cols];
+        for (int i = 0; i < cols; i++) {
+            hue[i] = interleaved[3*i];
+            lightness[i] = interleaved[3*i+1];
+            saturation[i] = interleaved[3*i+2];
+        }
+
+        // Release resources
+        hls.release();
+        averages.release();
+
+        return new LineProfile(hue, lightness, saturation);
+    }
+
+    public int getWidth() {
+        return lightness.length;
+    }
+
+    /**
+     * Fuses the profiles of several frames by taking the median of every column, which keeps a
+     * single noisy frame from adding or removing a line
+     * @param profiles: the profiles to fuse
+     * @return the column-wise median profile, as wide as the narrowest input
+     */
+    public static LineProfile median(List<LineProfile> profiles) {
+        int width = Integer.MAX_VALUE;
+        for (LineProfile profile : profiles)
+            width = Math.min(width, profile.getWidth());
+        if (profiles.isEmpty())
+            width = 0;
+
+        float[] hue = new float[width];
+        float[] lightness = new float[width];
+        float[] saturation = new float[width];
+        float[] column = new float[profiles.size()];
+        for (int i = 0; i < width; i++) {
+            hue[i] = columnMedian(profiles, 0, i, column);
+            lightness[i] = columnMedian(profiles, 1, i, column);
+            saturation[i] = columnMedian(profiles, 2, i, column);
+        }
+        return new LineProfile(hue, lightness, saturation);
+    }
+
+    private static float columnMedian(List<LineProfile> profiles, int channel, int col, float[] column) {
+        for (int k = 0; k < profiles.size(); k++) {
+            LineProfile profile = profiles.get(k);
+            column[k] = channel == 0 ? profile.hue[col] : channel == 1 ? profile.lightness[col] : profile.saturation[col];
+        }
+        Arrays.sort(column);
+        int mid = column.length / 2;
+        return column.length % 2 == 1 ? column[mid] : (column[mid-1] + column[mid]) / 2;
+    }
+}
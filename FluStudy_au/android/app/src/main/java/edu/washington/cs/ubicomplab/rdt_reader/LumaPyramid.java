@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Gaussian pyramid over the luma of one frame, where level 0 is the frame itself and every
+ * further level halves the resolution. Levels are built on first use, so the stages that share
+ * the pyramid only pay for the levels they actually read.
+ */
+public class LumaPyramid {
+    private final List<Mat> mLevels = new ArrayList<>();
+    private final MatPool mPool;
+    private Mat mBase;
+    private int mBuiltLevels = 0;
+
+    /**
+     * @param pool: where to take the level buffers from, or null for the pyramid to own them
+     */
+    public LumaPyramid(MatPool pool) {
+        mPool = pool;
+    }
+
+    /**
+     * @param base: the full-resolution luma, which the pyramid does not take over
+     * @param pool: where to take the level buffers from, or null for the pyramid to own them
+     */
+    public LumaPyramid(Mat base, MatPool pool) {
+        this(pool);
+        reset(base);
+    }
+
+    /**
+     * Points the pyramid at a new frame, keeping the level buffers for reuse
+     * @param base: the full-resolution luma of the frame
+     */
+    public void reset(Mat base) {
+        mBase = base;
+        mBuiltLevels = 1;
+    }
+
+    /**
+     * @param level: the pyramid level, 0 being full resolution
+     * @return the luma at that level
+     */
+    public Mat getLevel(int level) {
+        if (level == 0)
+            return mBase;
+        while (mLevels.size() < level)
+            mLevels.add(mPool == null ? new Mat() : mPool.get("pyramid" + (mLevels.size() + 1)));
+        while (mBuiltLevels <= level) {
+            Imgproc.pyrDown(getLevel(mBuiltLevels - 1), mLevels.get(mBuiltLevels - 1));
+            mBuiltLevels++;
+        }
+        return mLevels.get(level - 1);
+    }
+
+    /**
+     * @param level: the pyramid level
+     * @return the size of that level relative to the full resolution
+     */
+    public static double getScale(int level) {
+        return 1.0 / (1 << level);
+    }
+
+    /**
+     * @param minScale: the smallest acceptable scale relative to the full resolution
+     * @return the coarsest level that is at least that large
+     */
+    public static int getCoarsestLevel(double minScale) {
+        int level = 0;
+        while (level < Constants.PYRAMID_MAX_LEVEL && getScale(level + 1) >= minScale)
+            level++;
+        return level;
+    }
+
+    public Mat getBase() {
+        return mBase;
+    }
+
+    /**
+     * Releases the level buffers unless they belong to a pool
+     */
+    public void release() {
+        if (mPool == null) {
+            for (Mat level : mLevels)
+                level.release();
+        }
+        mLevels.clear();
+        mBase = null;
+        mBuiltLevels = 0;
+    }
+}
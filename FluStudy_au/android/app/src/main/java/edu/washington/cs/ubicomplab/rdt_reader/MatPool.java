@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfKeyPoint;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Named scratch Mats that are reused across frames instead of being allocated and released on
+ * every call. A scratch Mat takes the size of the first frame written into it (the preview
+ * resolution) and OpenCV keeps its buffer as long as later frames have the same size and type.
+ *
+ * Scratch Mats are kept per thread, so the same processor can be used from more than one
+ * worker without two frames sharing a buffer.
+ *
+ * Mats passed to {@link #track(Mat)} are counted until they come back through
+ * {@link #release(Mat)}, so the number of live native Mats can be watched over a long capture
+ * session. In leak-check mode the pool also remembers every tracked Mat, which catches the ones
+ * a receiver released on its own.
+ */
+public class MatPool {
+    private final Map<Thread, Map<String, Mat>> mScratch = new WeakHashMap<>();
+    private final List<WeakReference<Mat>> mTracked = new ArrayList<>();
+    private final AtomicInteger mHandedOut = new AtomicInteger();
+    private volatile boolean mLeakCheck;
+
+    public MatPool(boolean leakCheck) {
+        mLeakCheck = leakCheck;
+    }
+
+    public void setLeakCheck(boolean leakCheck) {
+        mLeakCheck = leakCheck;
+        if (!leakCheck) {
+            synchronized (mTracked) {
+                mTracked.clear();
+            }
+        }
+    }
+
+    public boolean isLeakCheck() {
+        return mLeakCheck;
+    }
+
+    /**
+     * @param name: identifies the buffer within the calling thread
+     * @return the calling thread's scratch Mat with that name
+     */
+    public synchronized Mat get(String name) {
+        Map<String, Mat> scratch = getThreadScratch();
+        Mat mat = scratch.get(name);
+        if (mat == null) {
+            mat = new Mat();
+            scratch.put(name, mat);
+        }
+        return mat;
+    }
+
+    /**
+     * @param name: identifies the buffer within the calling thread
+     * @return the calling thread's scratch MatOfKeyPoint with that name
+     */
+    public synchronized MatOfKeyPoint getKeyPoints(String name) {
+        Map<String, Mat> scratch = getThreadScratch();
+        Mat mat = scratch.get(name);
+        if (!(mat instanceof MatOfKeyPoint)) {
+            if (mat != null)
+                mat.release();
+            mat = new MatOfKeyPoint();
+            scratch.put(name, mat);
+        }
+        return (MatOfKeyPoint) mat;
+    }
+
+    private synchronized Map<String, Mat> getThreadScratch() {
+        Thread thread = Thread.currentThread();
+        Map<String, Mat> scratch = mScratch.get(thread);
+        if (scratch == null) {
+            scratch = new HashMap<>();
+            mScratch.put(thread, scratch);
+        }
+        return scratch;
+    }
+
+    /**
+     * Registers a Mat that leaves the processor and must be released by its receiver
+     * @param mat: the Mat to watch
+     * @return the same Mat
+     */
+    public <T extends Mat> T track(T mat) {
+        // Empty Mats hold no native data, and release(Mat) doesn't count them either
+        if (!mat.empty())
+            mHandedOut.incrementAndGet();
+        if (mLeakCheck) {
+            synchronized (mTracked) {
+                mTracked.add(new WeakReference<Mat>(mat));
+            }
+        }
+        return mat;
+    }
+
+    /**
+     * Releases a Mat that was handed out through track(Mat)
+     * @param mat: the Mat to release, may be null
+     */
+    public void release(Mat mat) {
+        if (mat == null)
+            return;
+        if (!mat.empty())
+            mHandedOut.decrementAndGet();
+        mat.release();
+    }
+
+    /**
+     * Counts the native Mats that still hold data: every scratch buffer plus every tracked Mat
+     * that has not been released yet
+     * @return the number of live native Mats
+     */
+    public int getLiveCount() {
+        int count = 0;
+        synchronized (this) {
+            for (Map<String, Mat> scratch : mScratch.values()) {
+                for (Mat mat : scratch.values()) {
+                    if (!mat.empty())
+                        count++;
+                }
+            }
+        }
+        if (!mLeakCheck)
+            return count + mHandedOut.get();
+        synchronized (mTracked) {
+            Iterator<WeakReference<Mat>> iterator = mTracked.iterator();
+            while (iterator.hasNext()) {
+                Mat mat = iterator.next().get();
+                if (mat == null || mat.empty())
+                    iterator.remove();
+                else
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Releases the calling thread's scratch Mats, e.g. before a worker thread exits
+     */
+    public synchronized void releaseThread() {
+        Map<String, Mat> scratch = mScratch.remove(Thread.currentThread());
+        if (scratch != null) {
+            for (Mat mat : scratch.values())
+                mat.release();
+        }
+    }
+
+    /**
+     * Releases every scratch Mat of every thread
+     */
+    public synchronized void release() {
+        for (Map<String, Mat> scratch : mScratch.values()) {
+            for (Mat mat : scratch.values())
+                mat.release();
+        }
+        mScratch.clear();
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide counters, latency histograms and gauges for the reader, cheap enough to leave on
+ * in the field. Histograms use log-linear buckets like HdrHistogram: every power of two is split
+ * into {@link Histogram#SUB_BUCKETS} buckets, so any value is kept within about 6% in a fixed
+ * amount of memory. Gauges are read only when a snapshot is taken.
+ */
+public class MetricsRegistry {
+    public static final String CAPTURE_RDT = "captureRDT";
+    public static final String DETECT_RDT_WITH_SIFT = "detectRDTWithSIFT";
+    public static final String CROP_RDT = "cropRDT";
+    public static final String CROP_RESULT_WINDOW = "cropResultWindow";
+    public static final String INTERPRET_RESULT = "interpretResult";
+    public static final String PIPELINE_CONVERT = "pipeline.convert";
+    public static final String PIPELINE_QUALITY = "pipeline.quality";
+    public static final String PIPELINE_DETECT = "pipeline.detect";
+    public static final String PIPELINE_INTERPRET = "pipeline.interpret";
+
+    public static final String CAPTURE_PASSED = "captureRDT.passed";
+    public static final String SIFT_FOUND = "detectRDTWithSIFT.found";
+    public static final String RESULT_WINDOW_FOUND = "cropResultWindow.found";
+
+    public static final String LIVE_MATS = "liveMats";
+    public static final String NATIVE_HEAP_BYTES = "nativeHeapBytes";
+
+    private static MetricsRegistry instance = null;
+
+    private final Map<String, Counter> mCounters = new LinkedHashMap<>();
+    private final Map<String, Histogram> mHistograms = new LinkedHashMap<>();
+    private final Map<String, Gauge> mGauges = new LinkedHashMap<>();
+
+    public static synchronized MetricsRegistry getInstance() {
+        if (instance == null)
+            instance = new MetricsRegistry();
+        return instance;
+    }
+
+    public interface Gauge {
+        long getValue();
+    }
+
+    public static class Counter {
+        private final AtomicLong mValue = new AtomicLong();
+
+        public void increment() {
+            mValue.incrementAndGet();
+        }
+
+        public long getValue() {
+            return mValue.get();
+        }
+
+        void reset() {
+            mValue.set(0);
+        }
+    }
+
+    /**
+     * A latency histogram over nanoseconds with log-linear buckets
+     */
+    public static class Histogram {
+        static final int SUB_BUCKET_BITS = 4;
+        static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        private final long[] mCounts = new long[BUCKETS];
+        private long mCount = 0;
+        private long mSum = 0;
+        private long mMax = 0;
+
+        /**
+         * @param nanos: the latency of one call
+         */
+        public synchronized void record(long nanos) {
+            if (nanos < 0)
+                nanos = 0;
+            mCounts[getBucket(nanos)]++;
+            mCount++;
+            mSum += nanos;
+            mMax = Math.max(mMax, nanos);
+        }
+
+        /**
+         * @param percentile: the percentile between 0 and 100
+         * @return the latency in nanoseconds, within the precision of a bucket
+         */
+        public synchronized long getPercentile(double percentile) {
+            if (mCount == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * mCount));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mCounts[i];
+                if (seen >= rank)
+                    return Math.min(mMax, getBucketMiddle(i));
+            }
+            return mMax;
+        }
+
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        public synchronized long getMax() {
+            return mMax;
+        }
+
+        public synchronized long getMean() {
+            return mCount == 0 ? 0 : mSum / mCount;
+        }
+
+        synchronized void reset() {
+            Arrays.fill(mCounts, 0);
+            mCount = 0;
+            mSum = 0;
+            mMax = 0;
+        }
+
+        static int getBucket(long value) {
+            if (value < SUB_BUCKETS)
+                return (int) value;
+            int magnitude = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        static long getBucketMiddle(int bucket) {
+            if (bucket < SUB_BUCKETS)
+                return bucket;
+            int shift = bucket / SUB_BUCKETS - 1;
+            long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+            return lower + ((1L << shift) >> 1);
+        }
+    }
+
+    /**
+     * A histogram's summary at the time of a snapshot
+     */
+    public static class HistogramSnapshot {
+        public final long count;
+        public final long p50;
+        public final long p90;
+        public final long p99;
+        public final long max;
+        public final long mean;
+
+        HistogramSnapshot(Histogram histogram) {
+            count = histogram.getCount();
+            p50 = histogram.getPercentile(50);
+            p90 = histogram.getPercentile(90);
+            p99 = histogram.getPercentile(99);
+            max = histogram.getMax();
+            mean = histogram.getMean();
+        }
+    }
+
+    public static class Snapshot {
+        public final Map<String, Long> counters = new LinkedHashMap<>();
+        public final Map<String, HistogramSnapshot> histograms = new LinkedHashMap<>();
+        public final Map<String, Long> gauges = new LinkedHashMap<>();
+    }
+
+    /**
+     * @param name: the counter's name
+     * @return the counter, created on first use
+     */
+    public synchronized Counter counter(String name) {
+        Counter counter = mCounters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            mCounters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * @param name: the histogram's name
+     * @return the histogram, created on first use
+     */
+    public synchronized Histogram histogram(String name) {
+        Histogram histogram = mHistograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            mHistograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge with the same name
+     * @param name: the gauge's name
+     * @param gauge: reads the current value
+     */
+    public synchronized void gauge(String name, Gauge gauge) {
+        mGauges.put(name, gauge);
+    }
+
+    /**
+     * Unregisters a gauge unless it has been replaced since
+     * @param name: the gauge's name
+     * @param gauge: the gauge that was registered
+     */
+    public synchronized void removeGauge(String name, Gauge gauge) {
+        if (mGauges.get(name) == gauge)
+            mGauges.remove(name);
+    }
+
+    /**
+     * @return the current value of every metric
+     */
+    public synchronized Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        for (Map.Entry<String, Counter> entry : mCounters.entrySet())
+            snapshot.counters.put(entry.getKey(), entry.getValue().getValue());
+        for (Map.Entry<String, Histogram> entry : mHistograms.entrySet())
+            snapshot.histograms.put(entry.getKey(), new HistogramSnapshot(entry.getValue()));
+        for (Map.Entry<String, Gauge> entry : mGauges.entrySet())
+            snapshot.gauges.put(entry.getKey(), entry.getValue().getValue());
+        return snapshot;
+    }
+
+    /**
+     * Clears the counters and histograms, e.g. at the start of a capture session
+     */
+    public synchronized void reset() {
+        for (Counter counter : mCounters.values())
+            counter.reset();
+        for (Histogram histogram : mHistograms.values())
+            histogram.reset();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import org.opencv.core.Rect;
+
+import host.exp.exponent.R;
+
+import static edu.washington.cs.ubicomplab.rdt_reader.Constants.*;
+
+/**
+ * Describes one kind of RDT: its reference image and the positions on the perspective-corrected
+ * strip that depend on it. Everything else, e.g. the quality thresholds, is shared by all strips
+ * and stays in {@link Constants}.
+ */
+public class RdtProfile {
+    public static final RdtProfile QUICKVUE = new RdtProfile("quickvue", "quickvue_ref_v5",
+            R.drawable.quickvue_ref_v5,
+            new Rect(RESULT_WINDOW_X, RESULT_WINDOW_Y, RESULT_WINDOW_WIDTH, RESULT_WINDOW_HEIGHT),
+            FIDUCIAL_POSITION_MIN, FIDUCIAL_POSITION_MAX, FIDUCIAL_DISTANCE, FIDUCIAL_TO_CONTROL_LINE_OFFSET,
+            CONTROL_LINE_POSITION, TEST_A_LINE_POSITION, TEST_B_LINE_POSITION);
+
+    public final String name;
+    public final String refName;
+    public final int refDrawable;
+    public final Rect resultWindow;
+    public final int fiducialPositionMin;
+    public final int fiducialPositionMax;
+    public final int fiducialDistance;
+    public final int fiducialToControlLineOffset;
+    public final int controlLinePosition;
+    public final int testALinePosition;
+    public final int testBLinePosition;
+
+    /**
+     * @param name: identifies the profile in the {@link RdtProfileRegistry}
+     * @param refName: the name of the reference image, which keys its cached features
+     * @param refDrawable: the resource of the reference image
+     * @param resultWindow: the result window on the reference image
+     * @param fiducialPositionMin: the leftmost position of a fiducial on the corrected strip
+     * @param fiducialPositionMax: the rightmost position of a fiducial on the corrected strip
+     * @param fiducialDistance: the expected distance between the fiducials
+     * @param fiducialToControlLineOffset: the distance from the left fiducial to the control line
+     * @param controlLinePosition: the control line's position in the result window
+     * @param testALinePosition: the test A line's position in the result window
+     * @param testBLinePosition: the test B line's position in the result window
+     */
+    public RdtProfile(String name, String refName, int refDrawable, Rect resultWindow,
+                      int fiducialPositionMin, int fiducialPositionMax, int fiducialDistance,
+                      int fiducialToControlLineOffset, int controlLinePosition,
+                      int testALinePosition, int testBLinePosition) {
+        this.name = name;
+        this.refName = refName;
+        this.refDrawable = refDrawable;
+        this.resultWindow = resultWindow;
+        this.fiducialPositionMin = fiducialPositionMin;
+        this.fiducialPositionMax = fiducialPositionMax;
+        this.fiducialDistance = fiducialDistance;
+        this.fiducialToControlLineOffset = fiducialToControlLineOffset;
+        this.controlLinePosition = controlLinePosition;
+        this.testALinePosition = testALinePosition;
+        this.testBLinePosition = testBLinePosition;
+    }
+}
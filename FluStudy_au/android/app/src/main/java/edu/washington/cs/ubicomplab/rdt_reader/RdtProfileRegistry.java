@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Debug;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static edu.washington.cs.ubicomplab.rdt_reader.Constants.*;
+
+/**
+ * Hands out one {@link ImageProcessor} per {@link RdtProfile}. A processor is built the first time
+ * its profile is requested, or ahead of time on a background thread with {@link #preload}, and
+ * several profiles can load at once. Under memory pressure every processor except the one in
+ * use is released and rebuilt from its cached reference features when it is needed again.
+ */
+public class RdtProfileRegistry implements ComponentCallbacks2 {
+    private static final String TAG = "RdtProfileRegistry";
+
+    private static RdtProfileRegistry instance = null;
+
+    private final Context mContext;
+    private final Map<String, RdtProfile> mProfiles = new LinkedHashMap<>();
+    private final Map<String, Entry> mProcessors = new LinkedHashMap<>();
+    private final ThreadPoolExecutor mExecutor;
+    private String mActiveName = null;
+
+    private static class Entry {
+        Future<ImageProcessor> processor;
+        boolean evicted = false;
+    }
+
+    public static synchronized RdtProfileRegistry getInstance(Context context) {
+        if (instance == null)
+            instance = new RdtProfileRegistry(context.getApplicationContext());
+        return instance;
+    }
+
+    private RdtProfileRegistry(Context context) {
+        mContext = context;
+        mExecutor = new ThreadPoolExecutor(PROFILE_LOAD_THREADS, PROFILE_LOAD_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+        register(RdtProfile.QUICKVUE);
+        context.registerComponentCallbacks(this);
+
+        MetricsRegistry.getInstance().gauge(MetricsRegistry.NATIVE_HEAP_BYTES, new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return Debug.getNativeHeapAllocatedSize();
+            }
+        });
+    }
+
+    /**
+     * Makes a profile available, replacing any profile with the same name
+     * @param profile: the profile
+     */
+    public synchronized void register(RdtProfile profile) {
+        evict(profile.name);
+        mProfiles.put(profile.name, profile);
+    }
+
+    /**
+     * @return the names of the registered profiles
+     */
+    public synchronized List<String> getProfileNames() {
+        return new ArrayList<>(mProfiles.keySet());
+    }
+
+    /**
+     * Starts building a profile's processor in the background if it is not built or building yet
+     * @param name: the profile's name
+     * @return the processor once it is built
+     */
+    public synchronized Future<ImageProcessor> preload(String name) {
+        Entry entry = mProcessors.get(name);
+        if (entry == null) {
+            final RdtProfile profile = mProfiles.get(name);
+            if (profile == null)
+                throw new IllegalArgumentException("Unknown RDT profile " + name);
+            final Entry newEntry = new Entry();
+            newEntry.processor = mExecutor.submit(new Callable<ImageProcessor>() {
+                @Override
+                public ImageProcessor call() {
+                    long startTime = System.currentTimeMillis();
+                    ImageProcessor imageProcessor = new ImageProcessor(mContext, profile);
+                    // Computing the reference features leaves scratch Mats on this pool thread
+                    imageProcessor.releaseThreadScratch();
+                    Log.d(TAG, String.format("loaded %s in %d ms", profile.name, System.currentTimeMillis() - startTime));
+
+                    // The profile may have been evicted while it was loading
+                    synchronized (RdtProfileRegistry.this) {
+                        if (newEntry.evicted)
+                            imageProcessor.release();
+                    }
+                    return imageProcessor;
+                }
+            });
+            mProcessors.put(name, newEntry);
+            entry = newEntry;
+        }
+        return entry.processor;
+    }
+
+    /**
+     * Returns a profile's processor, waiting for it to be built if needed, and marks the profile
+     * as the one in use so it is never evicted and its live Mats are the ones reported. A
+     * processor evicted or replaced while it was loading is built again.
+     * @param name: the profile's name
+     * @return the processor
+     */
+    public ImageProcessor get(String name) {
+        while (true) {
+            Future<ImageProcessor> processor;
+            synchronized (this) {
+                processor = preload(name);
+                mActiveName = name;
+            }
+            try {
+                ImageProcessor imageProcessor = processor.get();
+                synchronized (this) {
+                    if (name.equals(mActiveName))
+                        MetricsRegistry.getInstance().gauge(MetricsRegistry.LIVE_MATS, imageProcessor.getLiveMatGauge());
+                }
+                return imageProcessor;
+            } catch (CancellationException e) {
+                // A concurrent register() or evict() dropped the processor while it was loading
+                Log.d(TAG, "reloading " + name + " after it was evicted while loading");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while loading RDT profile " + name, e);
+            } catch (ExecutionException e) {
+                synchronized (this) {
+                    mProcessors.remove(name);
+                }
+                throw new IllegalStateException("Unable to load RDT profile " + name, e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Releases a profile's processor; it is built again the next time it is requested
+     * @param name: the profile's name
+     */
+    public synchronized void evict(String name) {
+        Entry entry = mProcessors.remove(name);
+        if (entry == null)
+            return;
+        if (name.equals(mActiveName))
+            mActiveName = null;
+
+        // A processor that is still loading releases itself once it is built
+        entry.evicted = true;
+        if (entry.processor.isDone()) {
+            try {
+                entry.processor.get().release();
+            } catch (InterruptedException | ExecutionException e) {
+                // Nothing was built, so there is nothing to release
+            }
+        } else {
+            entry.processor.cancel(false);
+        }
+    }
+
+    /**
+     * Releases every processor except the one in use
+     */
+    public synchronized void evictInactive() {
+        for (String name : new ArrayList<>(mProcessors.keySet())) {
+            if (!name.equals(mActiveName))
+                evict(name);
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            Log.d(TAG, "trimming profiles at level " + level);
+            evictInactive();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        evictInactive();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
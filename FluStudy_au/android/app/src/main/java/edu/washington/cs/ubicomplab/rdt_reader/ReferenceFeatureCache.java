@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import android.util.Log;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfKeyPoint;
+import org.opencv.core.Size;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Persists the reference image's keypoints and descriptors in a versioned binary blob so that
+ * they only have to be computed on the first run. Later runs memory-map the blob instead of
+ * decoding the reference image and running BRISK and SIFT on it.
+ *
+ * Layout (big-endian): magic, format version, key length, key bytes (UTF-8), reference width,
+ * reference height, reference sharpness, then the BRISK keypoints, BRISK descriptors,
+ * SIFT keypoints and SIFT descriptors, each as rows, cols, type and the raw element data.
+ */
+public class ReferenceFeatureCache {
+    private static final String TAG = "ReferenceFeatureCache";
+    private static final int MAGIC = 0x52445446; // "RDTF"
+    private static final int FORMAT_VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+    private final String mKey;
+
+    /**
+     * The reference data that ImageProcessor needs before it can analyse a frame
+     */
+    public static class Features {
+        public Size refSize;
+        public double refSharpness;
+        public MatOfKeyPoint briskKeypoints = new MatOfKeyPoint();
+        public Mat briskDescriptor = new Mat();
+        public MatOfKeyPoint siftKeypoints = new MatOfKeyPoint();
+        public Mat siftDescriptor = new Mat();
+        // Only available when the features were computed rather than loaded
+        public Mat refImg = null;
+    }
+
+    /**
+     * @param file: where the blob is stored
+     * @param key: identifies the reference image and detector settings the blob was built
+     *           from; a blob with a different key is treated as stale
+     */
+    public ReferenceFeatureCache(File file, String key) {
+        mFile = file;
+        mKey = key;
+    }
+
+    /**
+     * Memory-maps the blob and copies its contents into Mats
+     * @return the cached features, or null if the blob is missing, stale or corrupt
+     */
+    public Features load() {
+        if (!mFile.isFile())
+            return null;
+
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mFile, "r");
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+                return null;
+            byte[] key = new byte[buffer.getInt()];
+            buffer.get(key);
+            if (!Arrays.equals(key, mKey.getBytes(UTF_8)))
+                return null;
+
+            Features features = new Features();
+            features.refSize = new Size(buffer.getInt(), buffer.getInt());
+            features.refSharpness = buffer.getDouble();
+            readMat(buffer, features.briskKeypoints);
+            readMat(buffer, features.briskDescriptor);
+            readMat(buffer, features.siftKeypoints);
+            readMat(buffer, features.siftDescriptor);
+            return features;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            Log.w(TAG, "Unable to load reference features: " + e.getMessage());
+            return null;
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the blob atomically so that a crash mid-write never leaves a truncated file behind
+     * @param features: the freshly computed reference features
+     */
+    public void save(Features features) {
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                byte[] key = mKey.getBytes(UTF_8);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeInt((int) features.refSize.width);
+                out.writeInt((int) features.refSize.height);
+                out.writeDouble(features.refSharpness);
+                writeMat(out, features.briskKeypoints);
+                writeMat(out, features.briskDescriptor);
+                writeMat(out, features.siftKeypoints);
+                writeMat(out, features.siftDescriptor);
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(mFile))
+                throw new IOException("Unable to rename " + tmpFile);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Unable to save reference features: " + e.getMessage());
+            tmpFile.delete();
+        }
+    }
+
+    private static void writeMat(DataOutputStream out, Mat mat) throws IOException {
+        out.writeInt(mat.rows());
+        out.writeInt(mat.cols());
+        out.writeInt(mat.type());
+        int length = (int) (mat.total() * mat.channels());
+        if (length == 0)
+            return;
+
+        if (CvType.depth(mat.type()) == CvType.CV_8U) {
+            byte[] data = new byte[length];
+            mat.get(0, 0, data);
+            out.write(data);
+        } else if (CvType.depth(mat.type()) == CvType.CV_32F) {
+            float[] data = new float[length];
+            mat.get(0, 0, data);
+            for (float value : data)
+                out.writeFloat(value);
+        } else {
+            throw new IllegalArgumentException("Unsupported Mat type " + CvType.typeToString(mat.type()));
+        }
+    }
+
+    private static void readMat(MappedByteBuffer buffer, Mat mat) {
+        int rows = buffer.getInt();
+        int cols = buffer.getInt();
+        int type = buffer.getInt();
+        mat.create(rows, cols, type);
+        int length = rows * cols * CvType.channels(type);
+        if (length == 0)
+            return;
+
+        if (CvType.depth(type) == CvType.CV_8U) {
+            byte[] data = new byte[length];
+            buffer.get(data);
+            mat.put(0, 0, data);
+        } else if (CvType.depth(type) == CvType.CV_32F) {
+            float[] data = new float[length];
+            buffer.asFloatBuffer().get(data);
+            buffer.position(buffer.position() + length * 4);
+            mat.put(0, 0, data);
+        } else {
+            throw new IllegalArgumentException("Unsupported Mat type " + CvType.typeToString(type));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import org.opencv.core.DMatch;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDMatch;
+import org.opencv.features2d.BFMatcher;
+import org.opencv.features2d.FlannBasedMatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Matches frame descriptors against the fixed set of reference descriptors. Implementations are
+ * built once from the reference descriptors so that any indexing cost is paid up front rather
+ * than on every preview frame.
+ *
+ * Every returned DMatch has queryIdx pointing into the reference descriptors and trainIdx
+ * pointing into the frame descriptors, regardless of the direction the matcher searches in.
+ */
+public abstract class ReferenceMatcher {
+    public enum Type {
+        BRUTE_FORCE, FLANN
+    }
+
+    // Lowe's ratio test threshold for rejecting ambiguous matches
+    public static final double RATIO_THRESHOLD = 0.80;
+
+    protected final Mat mRefDescriptor;
+
+    protected ReferenceMatcher(Mat refDescriptor) {
+        mRefDescriptor = refDescriptor;
+    }
+
+    public static ReferenceMatcher create(Type type, Mat refDescriptor) {
+        switch (type) {
+            case FLANN:
+                return new Flann(refDescriptor);
+            case BRUTE_FORCE:
+            default:
+                return new BruteForce(refDescriptor);
+        }
+    }
+
+    /**
+     * Finds the unambiguous matches between the reference and the frame
+     * @param frameDescriptor: the descriptors detected in the frame
+     * @return the matches that pass the ratio test
+     */
+    public abstract List<DMatch> match(Mat frameDescriptor);
+
+    /**
+     * Releases any index built from the reference descriptors
+     */
+    public abstract void release();
+
+    /**
+     * Applies the ratio test to the two nearest neighbours of each descriptor
+     * @param knnMatches: the k=2 nearest neighbours for each query descriptor
+     * @param swap: whether the query was the frame, in which case the indices are swapped
+     * @return the matches that pass the ratio test
+     */
+    protected static List<DMatch> ratioTest(List<MatOfDMatch> knnMatches, boolean swap) {
+        ArrayList<DMatch> goodMatches = new ArrayList<>();
+        for (int i = 0; i < knnMatches.size(); i++) {
+            DMatch[] dMatches = knnMatches.get(i).toArray();
+            if (dMatches.length >= 2) {
+                DMatch m = dMatches[0];
+                DMatch n = dMatches[1];
+                if (m.distance <= RATIO_THRESHOLD * n.distance) {
+                    goodMatches.add(swap ? new DMatch(m.trainIdx, m.queryIdx, m.imgIdx, m.distance) : m);
+                }
+            }
+            knnMatches.get(i).release();
+        }
+        return goodMatches;
+    }
+
+    /**
+     * Exhaustively compares every reference descriptor with every frame descriptor
+     */
+    private static class BruteForce extends ReferenceMatcher {
+        private final BFMatcher mMatcher = BFMatcher.create(BFMatcher.BRUTEFORCE, false);
+        private final Mat mMask = new Mat();
+
+        BruteForce(Mat refDescriptor) {
+            super(refDescriptor);
+        }
+
+        @Override
+        public List<DMatch> match(Mat frameDescriptor) {
+            List<MatOfDMatch> matches = new ArrayList<>();
+            mMatcher.knnMatch(mRefDescriptor, frameDescriptor, matches, 2, mMask, false);
+            return ratioTest(matches, false);
+        }
+
+        @Override
+        public void release() {
+            mMask.release();
+        }
+    }
+
+    /**
+     * Searches a FLANN randomized KD-tree index built once over the reference descriptors.
+     * Since the index holds the reference, the frame descriptors are the queries.
+     */
+    private static class Flann extends ReferenceMatcher {
+        private final FlannBasedMatcher mMatcher = FlannBasedMatcher.create();
+
+        Flann(Mat refDescriptor) {
+            super(refDescriptor);
+            if (!refDescriptor.empty()) {
+                mMatcher.add(Collections.singletonList(refDescriptor));
+                mMatcher.train();
+            }
+        }
+
+        @Override
+        public List<DMatch> match(Mat frameDescriptor) {
+            List<MatOfDMatch> matches = new ArrayList<>();
+            if (mRefDescriptor.empty() || frameDescriptor.rows() < 2)
+                return new ArrayList<>();
+            mMatcher.knnMatch(frameDescriptor, matches, 2);
+            return ratioTest(matches, true);
+        }
+
+        @Override
+        public void release() {
+            mMatcher.clear();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static edu.washington.cs.ubicomplab.rdt_reader.Constants.*;
+
+/**
+ * Combines the interpretations of consecutive passing frames so that the result does not hinge
+ * on a single noisy frame. The line profiles of each frame are fused with a column-wise median
+ * and the lines are read again from the fused profile after every frame. The consensus is ready
+ * once the fused reading has stayed the same for a few frames, once enough frames have been
+ * seen, or once the latency budget since the first frame runs out.
+ *
+ * The aggregator keeps the Mats of the most recent passing frame for reporting and releases
+ * those of the frames before it.
+ */
+public class ResultConsensus {
+    private final ImageProcessor mProcessor;
+    private final List<LineProfile> mProfiles = new ArrayList<>();
+    private ImageProcessor.CaptureResult mCaptureResult;
+    private ImageProcessor.InterpretationResult mInterpretationResult;
+    private boolean[] mLastLines;
+    private int mStableCount = 0;
+    private long mStartTime = 0;
+
+    public ResultConsensus(ImageProcessor processor) {
+        mProcessor = processor;
+    }
+
+    public boolean isEmpty() {
+        return mProfiles.isEmpty();
+    }
+
+    public int getFrameCount() {
+        return mProfiles.size();
+    }
+
+    /**
+     * Adds a passing frame to the consensus, which takes over releasing its Mats
+     * @param captureResult: the result of captureRDT for the frame
+     * @param interpretationResult: the result of interpretResult for the frame
+     */
+    public void add(ImageProcessor.CaptureResult captureResult,
+                    ImageProcessor.InterpretationResult interpretationResult) {
+        if (interpretationResult.profile == null || interpretationResult.profile.getWidth() == 0) {
+            release(captureResult, interpretationResult);
+            return;
+        }
+
+        if (mProfiles.isEmpty())
+            mStartTime = System.currentTimeMillis();
+        mProfiles.add(interpretationResult.profile);
+
+        // Report the fused reading on the latest frame
+        LineProfile fused = LineProfile.median(mProfiles);
+        boolean[] lines = mProcessor.readLines(fused);
+        mStableCount = Arrays.equals(lines, mLastLines) ? mStableCount + 1 : 1;
+        mLastLines = lines;
+
+        interpretationResult.control = lines[0];
+        interpretationResult.testA = lines[1];
+        interpretationResult.testB = lines[2];
+        interpretationResult.profile = fused;
+        release(mCaptureResult, mInterpretationResult);
+        mCaptureResult = captureResult;
+        mInterpretationResult = interpretationResult;
+    }
+
+    /**
+     * @return whether the fused interpretation can be reported
+     */
+    public boolean isReady() {
+        if (mProfiles.isEmpty())
+            return false;
+        return (mProfiles.size() >= CONSENSUS_MIN_FRAMES && mStableCount >= CONSENSUS_STABLE_FRAMES) ||
+                mProfiles.size() >= CONSENSUS_MAX_FRAMES ||
+                System.currentTimeMillis() - mStartTime >= CONSENSUS_MAX_LATENCY_MS;
+    }
+
+    /**
+     * @return the capture result of the latest frame in the consensus
+     */
+    public ImageProcessor.CaptureResult getCaptureResult() {
+        return mCaptureResult;
+    }
+
+    /**
+     * @return the interpretation of the latest frame carrying the fused reading and profile
+     */
+    public ImageProcessor.InterpretationResult getInterpretationResult() {
+        return mInterpretationResult;
+    }
+
+    /**
+     * Starts over, handing the Mats of the latest frame to the caller of the getters
+     */
+    public void clear() {
+        mProfiles.clear();
+        mCaptureResult = null;
+        mInterpretationResult = null;
+        mLastLines = null;
+        mStableCount = 0;
+    }
+
+    /**
+     * Starts over and releases the Mats of the latest frame
+     */
+    public void reset() {
+        release(mCaptureResult, mInterpretationResult);
+        clear();
+    }
+
+    private static void release(ImageProcessor.CaptureResult captureResult,
+                                ImageProcessor.InterpretationResult interpretationResult) {
+        if (captureResult != null)
+            captureResult.release();
+        if (interpretationResult != null && interpretationResult.resultMat != null)
+            interpretationResult.resultMat.release();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2019 University of Washington Ubicomp Lab
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of a BSD-style license that can be found in the LICENSE file.
+ */
+
+package edu.washington.cs.ubicomplab.rdt_reader;
+
+import android.media.Image;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Converts camera frames into OpenCV Mats while reusing the conversion buffers between frames.
+ * The planes are copied into an I420 Mat through a single row-sized buffer, the grayscale image
+ * is a header over its Y plane, and RGBA comes from a single color conversion.
+ *
+ * The converter is not thread-safe; use one per converting thread.
+ */
+public class YuvFrameConverter {
+    private byte[] mRowData;
+
+    /**
+     * Copies a YUV_420_888 frame into an I420 Mat
+     * @param image: the camera frame, which can be closed afterwards
+     * @param yuvMat: the destination, reallocated only if the frame size changed
+     */
+    public void convert(Image image, Mat yuvMat) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int rowStride = image.getPlanes()[0].getRowStride();
+        if (mRowData == null || mRowData.length < rowStride)
+            mRowData = new byte[rowStride];
+
+        yuvMat.create(height + height / 2, width, CvType.CV_8UC1);
+        ImageUtil.copyToI420(image, yuvMat, mRowData);
+    }
+
+    /**
+     * @param yuvMat: an I420 frame
+     * @return a header over the luma of the frame, without any conversion
+     */
+    public static Mat toGrey(Mat yuvMat) {
+        return yuvMat.rowRange(0, yuvMat.rows() * 2 / 3);
+    }
+
+    /**
+     * @param yuvMat: an I420 frame
+     * @return a new RGBA Mat of the frame, owned by the caller
+     */
+    public static Mat toRGBA(Mat yuvMat) {
+        Mat rgbaMat = new Mat();
+        Imgproc.cvtColor(yuvMat, rgbaMat, Imgproc.COLOR_YUV2RGBA_I420);
+        return rgbaMat;
+    }
+}
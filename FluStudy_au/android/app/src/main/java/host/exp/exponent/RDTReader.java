@@ -7,6 +7,9 @@ package host.exp.exponent;
 
 import android.app.Activity;
 import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.widget.LinearLayout;
 
@@ -18,11 +21,17 @@ import com.facebook.react.bridge.WritableNativeArray;
 import com.facebook.react.bridge.WritableNativeMap;
 import com.facebook.react.uimanager.events.RCTEventEmitter;
 
+import org.opencv.core.Mat;
 import org.opencv.core.Point;
 
+import java.io.File;
+import java.util.Map;
+
+import edu.washington.cs.ubicomplab.rdt_reader.Constants;
+import edu.washington.cs.ubicomplab.rdt_reader.ImageEncoder;
 import edu.washington.cs.ubicomplab.rdt_reader.ImageProcessor;
 import edu.washington.cs.ubicomplab.rdt_reader.ImageQualityView;
-import edu.washington.cs.ubicomplab.rdt_reader.ImageUtil;
+import edu.washington.cs.ubicomplab.rdt_reader.MetricsRegistry;
 
 public class RDTReader extends LinearLayout implements ImageQualityView.ImageQualityViewListener {
     private static final String TAG = "RDTReader";
@@ -31,9 +40,20 @@ public class RDTReader extends LinearLayout implements ImageQualityView.ImageQua
     private boolean showViewfinder = false;
     private boolean flashEnabled = true;
     private ImageQualityView mImageQualityView;
+    private final ImageEncoder mEncoder;
+    private final Handler mMetricsHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mMetricsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sendMetrics();
+            mMetricsHandler.postDelayed(this, Constants.METRICS_SNAPSHOT_INTERVAL_MS);
+        }
+    };
     public RDTReader(Context context, Activity activity) {
         super(context);
         mActivity = activity;
+        // The survey keeps the URIs of the captured images, so they can't live in the cache
+        mEncoder = new ImageEncoder(new File(context.getFilesDir(), Constants.ENCODED_IMAGE_DIR));
 
     }
     @Override
@@ -57,12 +77,48 @@ public class RDTReader extends LinearLayout implements ImageQualityView.ImageQua
                 requestLayout();
             }
         });
+        mMetricsHandler.removeCallbacks(mMetricsRunnable);
+        mMetricsHandler.postDelayed(mMetricsRunnable, Constants.METRICS_SNAPSHOT_INTERVAL_MS);
     }
 
     public void disable() {
+        mMetricsHandler.removeCallbacks(mMetricsRunnable);
+        mEncoder.shutdown();
         removeAllViews();
     }
 
+    /**
+     * Sends a snapshot of the reader's metrics, with latencies in milliseconds
+     */
+    private void sendMetrics() {
+        MetricsRegistry.Snapshot snapshot = MetricsRegistry.getInstance().snapshot();
+        WritableMap counters = Arguments.createMap();
+        for (Map.Entry<String, Long> entry : snapshot.counters.entrySet()) {
+            counters.putDouble(entry.getKey(), entry.getValue());
+        }
+        WritableMap histograms = Arguments.createMap();
+        for (Map.Entry<String, MetricsRegistry.HistogramSnapshot> entry : snapshot.histograms.entrySet()) {
+            MetricsRegistry.HistogramSnapshot histogram = entry.getValue();
+            WritableMap summary = Arguments.createMap();
+            summary.putDouble("count", histogram.count);
+            summary.putDouble("p50", histogram.p50 / 1e6);
+            summary.putDouble("p90", histogram.p90 / 1e6);
+            summary.putDouble("p99", histogram.p99 / 1e6);
+            summary.putDouble("max", histogram.max / 1e6);
+            summary.putDouble("mean", histogram.mean / 1e6);
+            histograms.putMap(entry.getKey(), summary);
+        }
+        WritableMap gauges = Arguments.createMap();
+        for (Map.Entry<String, Long> entry : snapshot.gauges.entrySet()) {
+            gauges.putDouble(entry.getKey(), entry.getValue());
+        }
+        WritableMap event = Arguments.createMap();
+        event.putMap("counters", counters);
+        event.putMap("histograms", histograms);
+        event.putMap("gauges", gauges);
+        callReactCallback("RDTMetrics", event);
+    }
+
 
     public void callReactCallback(final String name, final WritableMap arguments) {
         mActivity.runOnUiThread(new Runnable() {
@@ -81,6 +137,7 @@ public class RDTReader extends LinearLayout implements ImageQualityView.ImageQua
     public void onRDTCameraReady(boolean supportsTorchMode) {
         WritableMap event = Arguments.createMap();
         event.putBoolean("supportsTorchMode", supportsTorchMode);
+        event.putString("captureDir", Uri.fromFile(mEncoder.getDir()).toString());
         callReactCallback("RDTCameraReady", event);
     }
 
@@ -92,11 +149,7 @@ public class RDTReader extends LinearLayout implements ImageQualityView.ImageQua
         if (interpretationResult == null) {
             interpretationResult = new ImageProcessor.InterpretationResult();
         }
-        WritableMap event = Arguments.createMap();
-        if (captureResult.allChecksPassed && captureResult.fiducial) {
-            event.putString("img", ImageUtil.matToBase64(captureResult.resultMat));
-            event.putString("resultWindowImg", ImageUtil.matToBase64(interpretationResult.resultMat));
-        }
+        final WritableMap event = Arguments.createMap();
         if (captureResult.boundary != null) {
             WritableArray boundary = new WritableNativeArray();
             for (Point p : captureResult.boundary.toArray()) {
@@ -117,10 +170,29 @@ public class RDTReader extends LinearLayout implements ImageQualityView.ImageQua
         event.putBoolean("orientation", captureResult.isRightOrientation);
         event.putDouble("angle", captureResult.angle);
         event.putInt("exposureResult", captureResult.exposureResult.ordinal());
+        if (captureResult.failedGate != null) {
+            event.putString("failedGate", captureResult.failedGate.name());
+        }
         event.putBoolean("control", interpretationResult.control);
         event.putBoolean("testA", interpretationResult.testA);
         event.putBoolean("testB", interpretationResult.testB);
-        callReactCallback("RDTCaptured", event);
+
+        // Write the images of a passing capture on the encoder thread and only send their URIs
+        if (captureResult.allChecksPassed && captureResult.fiducial) {
+            mEncoder.encode(
+                    new Mat[] {captureResult.resultMat, interpretationResult.resultMat},
+                    new ImageEncoder.Format[] {ImageEncoder.Format.JPEG, ImageEncoder.Format.PNG},
+                    new ImageEncoder.Callback() {
+                        @Override
+                        public void onEncoded(String[] uris) {
+                            event.putString("imgUri", uris[0]);
+                            event.putString("resultWindowImgUri", uris[1]);
+                            callReactCallback("RDTCaptured", event);
+                        }
+                    });
+        } else {
+            callReactCallback("RDTCaptured", event);
+        }
         return ImageQualityView.RDTDectedResult.CONTINUE;
     }
 
@@ -142,6 +214,7 @@ public class RDTReader extends LinearLayout implements ImageQualityView.ImageQua
     @Override
     public void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        mMetricsHandler.removeCallbacks(mMetricsRunnable);
         if (mImageQualityView != null) {
             mImageQualityView.onPause();
         }
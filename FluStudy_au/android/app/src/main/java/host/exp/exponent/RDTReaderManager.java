@@ -43,6 +43,10 @@ public class RDTReaderManager extends SimpleViewManager<RDTReader> {
                         MapBuilder.of(
                                 "phasedRegistrationNames",
                                 MapBuilder.of("bubbled", "onRDTInterpreting")))
+                .put("RDTMetrics",
+                        MapBuilder.of(
+                                "phasedRegistrationNames",
+                                MapBuilder.of("bubbled", "onRDTMetrics")))
                .build();
     }
 
@@ -8,8 +8,8 @@ import {
 const NativeRDTReader = requireNativeComponent("RDTReader");
 
 type InternalRDTCapturedArgs = {
-  img: string;
-  resultWindowImg: string;
+  imgUri?: string;
+  resultWindowImgUri?: string;
   passed: boolean;
   testStripDetected: boolean;
   center: boolean;
@@ -28,8 +28,8 @@ type InternalRDTCapturedArgs = {
 };
 
 export type RDTCapturedArgs = {
-  imgBase64: string;
-  resultWindowImgBase64: string;
+  imgUri?: string;
+  resultWindowImgUri?: string;
   testStripFound: boolean;
   testStripDetected: boolean;
   fiducialFound: boolean;
@@ -47,16 +47,33 @@ export type RDTCapturedArgs = {
 
 export type RDTCameraReadyArgs = {
   supportsTorchMode: boolean;
+  captureDir?: string;
 };
 
 export type RDTInterpretingArgs = {
   timeTaken: number;
 };
 
+export type RDTLatencySummary = {
+  count: number;
+  p50: number;
+  p90: number;
+  p99: number;
+  max: number;
+  mean: number;
+};
+
+export type RDTMetricsArgs = {
+  counters: { [name: string]: number };
+  histograms: { [name: string]: RDTLatencySummary };
+  gauges: { [name: string]: number };
+};
+
 type RDTReaderProps = {
   onRDTCaptured: (args: RDTCapturedArgs) => void;
   onRDTCameraReady: (args: RDTCameraReadyArgs) => void;
   onRDTInterpreting?: (args: RDTInterpretingArgs) => void;
+  onRDTMetrics?: (args: RDTMetricsArgs) => void;
   enabled: boolean;
   flashEnabled: boolean;
   showDefaultViewfinder?: boolean;
@@ -69,8 +86,8 @@ export class RDTReader extends React.Component<RDTReaderProps> {
   _onRDTCaptured = (event: any) => {
     const capturedArgs: InternalRDTCapturedArgs = event.nativeEvent;
     this.props.onRDTCaptured({
-      imgBase64: capturedArgs.img,
-      resultWindowImgBase64: capturedArgs.resultWindowImg,
+      imgUri: capturedArgs.imgUri,
+      resultWindowImgUri: capturedArgs.resultWindowImgUri,
       testStripFound: capturedArgs.passed,
       testStripDetected: capturedArgs.testStripDetected,
       isCentered: capturedArgs.center,
@@ -99,6 +116,12 @@ export class RDTReader extends React.Component<RDTReaderProps> {
     }
   };
 
+  _onRDTMetrics = (event: any) => {
+    if (this.props.onRDTMetrics) {
+      this.props.onRDTMetrics(event.nativeEvent);
+    }
+  };
+
   render() {
     return (
       <NativeRDTReader
@@ -106,6 +129,7 @@ export class RDTReader extends React.Component<RDTReaderProps> {
         onRDTCaptured={this._onRDTCaptured}
         onRDTCameraReady={this._onRDTCameraReady}
         onRDTInterpreting={this._onRDTInterpreting}
+        onRDTMetrics={this._onRDTMetrics}
       />
     );
   }
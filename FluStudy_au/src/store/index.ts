@@ -20,6 +20,7 @@ import { Transform } from "redux-persist/es/createTransform";
 import immutableTransform from "redux-persist-transform-immutable";
 import * as SecureStore from "expo-secure-store";
 import { uploaderMiddleware } from "./uploader";
+import { rdtPhotoMiddleware } from "./rdtPhotos";
 import { crashlytics, crashReportingDetailsMiddleware } from "../crashReporter";
 import {
   logFirebaseEvent,
@@ -39,6 +40,8 @@ export * from "./questions";
 import { default as survey, SurveyAction } from "./survey";
 export * from "./survey";
 
+export { sweepRDTPhotos } from "./rdtPhotos";
+
 type ClearStateAction = { type: "CLEAR_STATE" };
 export function clearState(): ClearStateAction {
   return { type: "CLEAR_STATE" };
@@ -90,6 +93,11 @@ export function savePhoto(photoId: string, jpegBase64: string) {
   return photoUploader.savePhoto(photoId, jpegBase64);
 }
 
+export function savePhotoFile(photoId: string, uri: string) {
+  logFirebaseEvent(TransportEvents.PHOTO_UPDATED, { photoId });
+  return photoUploader.savePhotoFile(photoId, uri);
+}
+
 export async function hasPendingPhotos() {
   return await photoUploader.hasPendingPhotos();
 }
@@ -135,7 +143,8 @@ async function getStoreImpl() {
     persistReducer(persistConfig, rootReducer),
     applyMiddleware(
       loggingMiddleware("CrashReport", crashReportingDetailsMiddleware),
-      loggingMiddleware("Upload", uploaderMiddleware)
+      loggingMiddleware("Upload", uploaderMiddleware),
+      loggingMiddleware("RDTPhotos", rdtPhotoMiddleware)
     )
   );
 }
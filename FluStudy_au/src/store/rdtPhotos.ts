@@ -0,0 +1,55 @@
+// Copyright (c) 2019 by Audere
+//
+// Use of this source code is governed by an LGPL-3.0 license that
+// can be found in the LICENSE file distributed with this file.
+
+import { AnyAction, Dispatch, MiddlewareAPI } from "redux";
+import * as FileSystem from "expo-file-system";
+import { getStore, StoreState } from "./index";
+
+// The RDT reader writes its photos to app storage and the survey owns them from then on, so
+// they're deleted once the survey stops referring to them.
+
+function referencedPhotos(state: StoreState | undefined): string[] {
+  if (!state || !state.survey) {
+    return [];
+  }
+  const { rdtPhotoUri, rdtPhotoHCUri } = state.survey;
+  return [rdtPhotoUri, rdtPhotoHCUri].filter(
+    (uri): uri is string => !!uri && uri.startsWith("file://")
+  );
+}
+
+function deletePhoto(uri: string) {
+  FileSystem.deleteAsync(uri, { idempotent: true }).catch(e =>
+    console.log(`Unable to delete ${uri}: ${e}`)
+  );
+}
+
+// Compares the photos before and after each action, so that replaying or rehydrating an
+// action never deletes a photo the resulting state still refers to.
+export function rdtPhotoMiddleware({ getState }: MiddlewareAPI) {
+  return (next: Dispatch) => (action: AnyAction) => {
+    const before = referencedPhotos(getState());
+    const result = next(action);
+    const after = referencedPhotos(getState());
+    before.filter(uri => after.indexOf(uri) < 0).forEach(deletePhoto);
+    return result;
+  };
+}
+
+// Deletes the photos in the reader's capture directory that the survey doesn't refer to, e.g.
+// those of a capture whose event arrived after the reader screen was left.
+export async function sweepRDTPhotos(captureDir: string) {
+  try {
+    const referenced = referencedPhotos((await getStore()).getState());
+    const dir = captureDir.endsWith("/") ? captureDir : captureDir + "/";
+    const names = await FileSystem.readDirectoryAsync(dir);
+    names
+      .map(name => dir + name)
+      .filter(uri => referenced.indexOf(uri) < 0)
+      .forEach(deletePhoto);
+  } catch (e) {
+    console.log(`Unable to sweep ${captureDir}: ${e}`);
+  }
+}
@@ -31,7 +31,7 @@ type FileInfo = {
   exists: boolean;
 };
 
-type Event = SaveEvent | UploadNextEvent;
+type Event = SaveEvent | SaveFileEvent | UploadNextEvent;
 
 interface SaveEvent {
   type: "SavePhoto";
@@ -39,6 +39,12 @@ interface SaveEvent {
   jpegBase64: string;
 }
 
+interface SaveFileEvent {
+  type: "SaveFile";
+  photoId: string;
+  uri: string;
+}
+
 interface UploadNextEvent {
   type: "UploadNext";
 }
@@ -112,6 +118,15 @@ export class PhotoUploader {
     this.fireEvent({ type: "SavePhoto", photoId, jpegBase64 });
   }
 
+  public savePhotoFile(photoId: string, uri: string): void {
+    const argSummary = `savePhotoFile '${photoId}' uri='${uri}'`;
+    debug(argSummary);
+    if (!photoId.length || !uri.length) {
+      throw logError("savePhotoFile", "args", new Error(argSummary));
+    }
+    this.fireEvent({ type: "SaveFile", photoId, uri });
+  }
+
   private onConnectionChange(connected: boolean) {
     debug(`onConnectionChange ${connected}`);
     if (connected) {
@@ -144,6 +159,9 @@ export class PhotoUploader {
             case "SavePhoto":
               await this.handleSave(event);
               break;
+            case "SaveFile":
+              await this.handleSaveFile(event);
+              break;
             case "UploadNext":
               await this.handleUploadNext();
               break;
@@ -174,6 +192,18 @@ export class PhotoUploader {
     this.uploadNext();
   }
 
+  private async handleSaveFile(save: SaveFileEvent): Promise<void> {
+    debug("handleSaveFile");
+    await this.ensurePendingDir();
+
+    const path = pendingPathFromId(save.photoId);
+    await logIfError("handleSaveFile", "copyAsync", () =>
+      FileSystem.copyAsync({ from: save.uri, to: path })
+    );
+    await idleness();
+    this.uploadNext();
+  }
+
   async hasPendingPhotos() {
     const pendingFiles = await this.pendingFiles();
     return pendingFiles.length > 0;
@@ -27,6 +27,7 @@ import {
   setRDTPhotoHC,
   setShownRDTFailWarning,
   StoreState,
+  sweepRDTPhotos,
 } from "../../../store";
 import { newUID } from "../../../util/csruid";
 import MultiTapContainer from "../MultiTapContainer";
@@ -43,7 +44,7 @@ import {
   RDTReaderExposureResult,
 } from "audere-lib/coughProtocol";
 import { GUTTER, SCREEN_MARGIN, LARGE_TEXT, REGULAR_TEXT } from "../../styles";
-import { savePhoto } from "../../../store";
+import { savePhotoFile } from "../../../store";
 import {
   logFirebaseEvent,
   AppEvents,
@@ -413,6 +414,10 @@ class RDTReader extends React.Component<Props & WithNamespaces> {
     });
     const { dispatch } = this.props;
     dispatch(setRDTStartTime());
+    // Nothing is captured yet, so remove the photos of earlier captures the survey never took
+    if (args.captureDir) {
+      sweepRDTPhotos(args.captureDir);
+    }
   };
 
   _addInstructionRequest(
@@ -556,7 +561,7 @@ class RDTReader extends React.Component<Props & WithNamespaces> {
     try {
       const photoId = await newUID();
       const hcPhotoId = await newUID();
-      dispatch(setRDTPhoto(`data:image/png;base64,${args.imgBase64}`));
+      dispatch(setRDTPhoto(args.imgUri || ""));
       dispatch(
         setTestStripImg(
           {
@@ -569,11 +574,13 @@ class RDTReader extends React.Component<Props & WithNamespaces> {
           }
         )
       );
-      savePhoto(photoId, args.imgBase64);
-      savePhoto(hcPhotoId, args.resultWindowImgBase64);
-      dispatch(
-        setRDTPhotoHC(`data:image/png;base64,${args.resultWindowImgBase64}`)
-      );
+      if (args.imgUri) {
+        savePhotoFile(photoId, args.imgUri);
+      }
+      if (args.resultWindowImgUri) {
+        savePhotoFile(hcPhotoId, args.resultWindowImgUri);
+      }
+      dispatch(setRDTPhotoHC(args.resultWindowImgUri || ""));
       dispatch(setRDTReaderResult(rdtCapturedArgsToResult(args)));
       dispatch(
         setRDTCaptureInfo(
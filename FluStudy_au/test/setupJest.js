@@ -106,6 +106,14 @@ function mockFileSystem() {
     return delay(undefined);
   }
 
+  function copyAsync({ from, to }) {
+    const entry = files.get(canonicalize(from));
+    if (entry == null) {
+      throw new Error(`no file at '${from}'`);
+    }
+    return writeAsStringAsync(to, entry.contents);
+  }
+
   makeDirectoryAsync(documentDirectory);
   makeDirectoryAsync(cacheDirectory);
 
@@ -115,13 +123,13 @@ function mockFileSystem() {
 
   return {
     moveAsync: notYetMocked,
-    copyAsync: notYetMocked,
     downloadAsync: notYetMocked,
     createDownloadResumable: notYetMocked,
 
     documentDirectory: "TestDocuments/",
     cacheDirectory: "TestCache/",
     deleteAsync: jest.fn(deleteAsync),
+    copyAsync: jest.fn(copyAsync),
     getInfoAsync: jest.fn(getInfoAsync),
     makeDirectoryAsync: jest.fn(makeDirectoryAsync),
     readAsStringAsync: jest.fn(readAsStringAsync),
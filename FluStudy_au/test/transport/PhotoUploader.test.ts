@@ -87,6 +87,19 @@ describe("PhotoUploader", () => {
       expect(offlineSaves).toEqual([]);
     });
 
+    it("uploads a photo file", async () => {
+      const photoId = "photoFile";
+      const jpegBase64 = base64url(photoId);
+      const uri = `${FileSystem.cacheDirectory}${photoId}.jpg`;
+      await FileSystem.writeAsStringAsync(uri, jpegBase64);
+
+      uploader.savePhotoFile(photoId, uri);
+      await uploader.waitForIdle();
+      expect(saves).toEqual([capture(photoId, jpegBase64)]);
+      expect(offlineSaves).toEqual([]);
+      expect(await FileSystem.readAsStringAsync(uri)).toEqual(jpegBase64);
+    });
+
     it("uploads multiple photos", async () => {
       const photo0Id = "photo0";
       const jpeg0Base64 = base64url(photo0Id);
@@ -11,6 +11,7 @@ import org.opencv.video.Video;
 public class ImageRegistration {
 
     private Mat mRefPyr = null;
+    private boolean mMotionFound = false;
 
     public Mat findMotion(Mat inp, boolean saveRef) {
         Mat ins = new Mat();
@@ -31,6 +32,7 @@ public class ImageRegistration {
     public Mat computeMotion(Mat greyMat) {
         Mat warp;
         Mat warpMat = findMotion(greyMat, true);
+        mMotionFound = warpMat != null;
         if (warpMat != null) {
             int level = 4;
             warp = CvUtils.scaleAffineMat(warpMat, level);
@@ -47,6 +49,14 @@ public class ImageRegistration {
         return warp;
     }
 
+    /**
+     * @return whether the last computeMotion measured the motion, rather than returning the
+     * frame's size as a stand-in for a large one
+     */
+    public boolean isMotionFound() {
+        return mMotionFound;
+    }
+
     private static Mat getTransformation(Mat ref, Mat ins) {
         final int warpMode = Video.MOTION_TRANSLATION;
         Mat warpMatrix = Mat.eye(2, 3, CvType.CV_32F);
@@ -24,6 +24,7 @@ public class RdtAPI {
     private Config mConfig;
     private Vector<Mat> mWarpList= new Vector<>();
     private ImageRegistration mImageRegistration;
+    private Point mLastMotion;
     public Config getConfig() {
         return mConfig;
     }
@@ -62,10 +63,19 @@ public class RdtAPI {
         return true;
     }
 
+    /**
+     * @return the translation in pixels from the previous frame passed to isSteady to the last
+     * one, or null if it could not be measured
+     */
+    public Point getLastMotion() {
+        return mLastMotion;
+    }
+
     public boolean isSteady(Bitmap frame) {
         Mat matInput = new Mat();
         Mat greyMat = new Mat();
         boolean result = false;
+        mLastMotion = null;
         try {
             Utils.bitmapToMat(frame, matInput);
             Imgproc.cvtColor(matInput, greyMat, Imgproc.COLOR_RGBA2GRAY);
@@ -79,10 +89,26 @@ public class RdtAPI {
         }
     }
 
+    /**
+     * Same as isSteady(Bitmap) for a frame that is already grey, e.g. the luma plane of a camera frame
+     */
+    public boolean isSteady(Mat greyMat) {
+        boolean result = false;
+        mLastMotion = null;
+        try {
+            result = checkSteadiness(greyMat) == GOOD;
+        } catch (Exception e) {
+            Log.d(TAG, "Exception: " + e.getMessage());
+        }
+        return result;
+    }
+
     private short checkSteadiness(Mat greyMat) {
         Mat warp;
         warp = mImageRegistration.computeMotion(greyMat);
         mWarpList.add(warp.clone());
+        mLastMotion = mImageRegistration.isMotionFound()
+                ? new Point(warp.get(0,2)[0], warp.get(1,2)[0]) : null;
 
         if (mWarpList.size() > 11){
             mWarpList.remove(0);
@@ -13,7 +13,6 @@ import android.graphics.Bitmap.Config;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
-import android.graphics.RectF;
 import android.hardware.Camera;
 import android.media.Image;
 import android.media.ImageReader;
@@ -31,20 +30,26 @@ import android.view.Surface;
 import android.view.WindowManager;
 import android.widget.LinearLayout;
 
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.OutputStreamWriter;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import host.exp.exponent.customview.AutoFitTextureView;
 import host.exp.exponent.env.ImageUtils;
 import host.exp.exponent.tflite.Classifier;
 import host.exp.exponent.tracking.InterpretationTracker;
+import host.exp.exponent.tracking.PhaseOneScheduler;
 import host.exp.exponent.tracking.RDTTracker;
 
 public class DetectorView extends LinearLayout implements
@@ -59,8 +64,16 @@ public class DetectorView extends LinearLayout implements
 
     private static final int TF_OD_API_INPUT_SIZE = 300;
     private static final boolean MAINTAIN_ASPECT = false;
+    // Sample the model input straight from camera2 YUV frames instead of drawing the converted frame
+    private static final boolean FUSED_MODEL_INPUT = true;
     private static final Size DESIRED_PREVIEW_SIZE = new Size(720, 1280);
 
+    // Reuse phase 1 detections while the camera moves less than this many frame pixels per frame
+    // and in total, for at most the staleness limit
+    private static final float PHASE_ONE_SKIP_MAX_FRAME_MOTION = 4;
+    private static final float PHASE_ONE_SKIP_MAX_TOTAL_MOTION = 32;
+    private static final long PHASE_ONE_SKIP_MAX_STALENESS_MS = 500;
+
     private static final int PERMISSIONS_REQUEST = 1;
     private static final String PERMISSION_CAMERA = Manifest.permission.CAMERA;
     private static final String READ_STORAGE = Manifest.permission.READ_EXTERNAL_STORAGE;
@@ -80,8 +93,8 @@ public class DetectorView extends LinearLayout implements
     private Handler handler;
     private HandlerThread handlerThread;
 
-    private Classifier boxDetector;
-    private Classifier interpretationDetector;
+    private volatile Classifier boxDetector;
+    private volatile boolean boxDetectorFailed = false;
 
     protected Size previewSize;
     protected Size stillSize;
@@ -93,6 +106,9 @@ public class DetectorView extends LinearLayout implements
     private volatile int previewFrameIndex = 0;
 
     private boolean processFrames = false;
+    // Preview frames are saved for JS at most this often, or never if 0
+    private volatile long previewSampleRateMs = 0;
+    private long lastPreviewSavedMs = 0;
 
     public DetectorView(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -105,12 +121,12 @@ public class DetectorView extends LinearLayout implements
         inflate(context, R.layout.detector_view, this);
         textureView = findViewById(R.id.texture);
 
-        // TODO: move this to background thread and check that it's ready where needed
         resourceLoader = new ResourceLoader(context, activity.getAssets());
         iprdAdapter = new IprdAdapter();
 
-        boxDetector = resourceLoader.loadPhase1Detector();
-        interpretationDetector = resourceLoader.loadPhase2Detector();
+        // Load phase 1 in the background so the camera can open meanwhile; frames are skipped
+        // until it is ready. Phase 2 only loads once a still frame is requested.
+        resourceLoader.getPhase1Detector();
 
         if (hasPermission()) {
             initCameraController();
@@ -123,6 +139,10 @@ public class DetectorView extends LinearLayout implements
         this.processFrames = processFrames;
     }
 
+    public void setPreviewSampleRate(long previewSampleRateMs) {
+        this.previewSampleRateMs = previewSampleRateMs;
+    }
+
     public void setDetectorListener(DetectorListener listener) {
         this.detectorListener = listener;
     }
@@ -163,12 +183,30 @@ public class DetectorView extends LinearLayout implements
         }
     }
 
+    private boolean boxDetectorReady() {
+        if (boxDetector == null && !boxDetectorFailed) {
+            Future<Classifier> detector = resourceLoader.getPhase1Detector();
+            if (detector.isDone()) {
+                boxDetector = ResourceLoader.await(detector);
+                // Without phase 1 no frame can be processed, so tell JS instead of waiting forever
+                if (boxDetector == null && !resourceLoader.retryPhase1Detector()) {
+                    boxDetectorFailed = true;
+                    detectorListener.onRDTError("Phase 1 detector could not be loaded");
+                }
+            }
+        }
+        return boxDetector != null;
+    }
+
     public Size getDesiredPreviewFrameSize() {
         return DESIRED_PREVIEW_SIZE;
     }
 
-    private abstract class ImageListener implements ImageReader.OnImageAvailableListener {
+    private abstract class ImageListener
+            implements ImageReader.OnImageAvailableListener, RDTTracker.FrameSource {
         private Runnable imageConverter;
+        private Runnable lumaConverter;
+        private Classifier.ImageSource modelInputSampler;
         private Runnable postInferenceCallback;
         protected RDTTracker rdtTracker;
 
@@ -182,10 +220,22 @@ public class DetectorView extends LinearLayout implements
         private int[] rgbBytes = null;
 
         protected Bitmap boxModelBitmap = null;
+        // The current frame's model input if it is sampled straight from the frame, or null if
+        // it was drawn into boxModelBitmap
+        private Classifier.ImageSource boxModelInput = null;
+
+        // Reused for preview frames, whose phase 1 results are dropped once the frame is processed
+        private final List<Classifier.Recognition> phaseOneResults = new ArrayList<>();
+        private final List<Classifier.Recognition> mappedPhaseOneResults = new ArrayList<>();
         private Matrix imageToModelTransform;
         private Matrix modelToImageTransform;
 
-        protected Bitmap imageBitmap = null;
+        private Bitmap imageBitmap = null;
+        private boolean haveImageBitmap = false;
+        private final Mat yPlaneMat = new Mat();
+        private int yPlaneStride = 0;
+        // The luma of the current frame, if needsGreyFrame()
+        protected Mat greyMat = null;
         protected int imageWidth;
         protected int imageHeight;
 
@@ -221,13 +271,53 @@ public class DetectorView extends LinearLayout implements
             vBuffer.get(vBytes);
         }
 
+        /**
+         * Prepares the inputs of the current frame before the camera gets its buffer back. The
+         * full frame is only converted here if the model input has to be drawn from it, which
+         * is always the case for the legacy camera whose buffer is reused, and otherwise on the
+         * first call to {@link #getBitmap()}.
+         */
         private void updateBitmaps() {
-            imageBitmap.setPixels(getRgbBytes(), 0, imageWidth, 0, 0, imageWidth, imageHeight);
-            final Canvas canvas = new Canvas(boxModelBitmap);
-            canvas.drawBitmap(imageBitmap, imageToModelTransform, null);
+            haveImageBitmap = false;
+            if (needsGreyFrame() && lumaConverter != null) {
+                lumaConverter.run();
+            }
+            boxModelInput = modelInputSampler;
+            if (boxModelInput == null) {
+                final Canvas canvas = new Canvas(boxModelBitmap);
+                canvas.drawBitmap(getBitmap(), imageToModelTransform, null);
+            }
             readyForNextImage();
         }
 
+        /** Returns the current frame, converting it the first time it is asked for. */
+        @Override
+        public Bitmap getBitmap() {
+            if (!haveImageBitmap) {
+                imageBitmap.setPixels(getRgbBytes(), 0, imageWidth, 0, 0, imageWidth, imageHeight);
+                haveImageBitmap = true;
+            }
+            return imageBitmap;
+        }
+
+        /** Whether processResult reads {@link #greyMat}. */
+        protected boolean needsGreyFrame() {
+            return false;
+        }
+
+        /** Copies the luma plane of the current frame into {@link #greyMat}. */
+        private void updateGreyMat(byte[] yData, int yRowStride) {
+            if (greyMat == null || yRowStride != yPlaneStride) {
+                if (greyMat != null) {
+                    greyMat.release();
+                }
+                yPlaneMat.create(imageHeight, yRowStride, CvType.CV_8UC1);
+                greyMat = yPlaneMat.submat(0, imageHeight, 0, imageWidth);
+                yPlaneStride = yRowStride;
+            }
+            yPlaneMat.put(0, 0, yData);
+        }
+
         protected void initialize() {
             imageBitmap = Bitmap.createBitmap(imageWidth, imageHeight, Config.ARGB_8888);
             boxModelBitmap = Bitmap.createBitmap(TF_OD_API_INPUT_SIZE, TF_OD_API_INPUT_SIZE, Config.ARGB_8888);
@@ -259,7 +349,7 @@ public class DetectorView extends LinearLayout implements
                 initialize();
             }
 
-            if (!resourceLoader.openCVReady()) {
+            if (!resourceLoader.openCVReady() || !boxDetectorReady()) {
                 return;
             }
 
@@ -274,12 +364,23 @@ public class DetectorView extends LinearLayout implements
                     return;
                 }
 
+                // Drop frames that won't be analyzed before copying them. This also keeps the
+                // copied planes intact while the background thread still converts them.
+                if (analyzingFrame || !processFrames) {
+                    image.close();
+                    return;
+                }
+
                 isProcessingFrame = true;
 
                 Trace.beginSection("ImageAvailable");
 
                 final Image.Plane[] planes = image.getPlanes();
                 fillBytes(planes);
+                // The planes can't be read once the image is closed
+                final int yRowStride = planes[0].getRowStride();
+                final int uvRowStride = planes[1].getRowStride();
+                final int uvPixelStride = planes[1].getPixelStride();
 
                 imageConverter =
                         new Runnable() {
@@ -291,13 +392,41 @@ public class DetectorView extends LinearLayout implements
                                         vBytes,
                                         imageWidth,
                                         imageHeight,
-                                        planes[0].getRowStride(),
-                                        planes[1].getRowStride(),
-                                        planes[1].getPixelStride(),
+                                        yRowStride,
+                                        uvRowStride,
+                                        uvPixelStride,
                                         rgbBytes);
                             }
                         };
 
+                lumaConverter =
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                updateGreyMat(yBytes, yRowStride);
+                            }
+                        };
+
+                modelInputSampler = !FUSED_MODEL_INPUT ? null :
+                        new Classifier.ImageSource() {
+                            @Override
+                            public void writePixels(int width, int height, Classifier.PixelSink sink) {
+                                ImageUtils.convertYUV420ToARGB8888(
+                                        yBytes,
+                                        uBytes,
+                                        vBytes,
+                                        imageWidth,
+                                        imageHeight,
+                                        yRowStride,
+                                        uvRowStride,
+                                        uvPixelStride,
+                                        modelToImageTransform,
+                                        width,
+                                        height,
+                                        sink);
+                            }
+                        };
+
                 postInferenceCallback =
                         new Runnable() {
                             @Override
@@ -330,7 +459,7 @@ public class DetectorView extends LinearLayout implements
                 initialize();
             }
 
-            if (!resourceLoader.openCVReady()) {
+            if (!resourceLoader.openCVReady() || !boxDetectorReady()) {
                 return;
             }
 
@@ -340,6 +469,15 @@ public class DetectorView extends LinearLayout implements
 
             isProcessingFrame = true;
 
+            modelInputSampler = null;
+            // The preview's NV21 data starts with its luma plane
+            lumaConverter = isStill ? null :
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            updateGreyMat(bytes, imageWidth);
+                        }
+                    };
             imageConverter =
                     new Runnable() {
                         @Override
@@ -366,14 +504,31 @@ public class DetectorView extends LinearLayout implements
             processImage();
         }
 
-        protected List<Classifier.Recognition> runPhaseOne() {
+        /**
+         * @param reuseResults Whether to return recognitions from the detector's pool, which are
+         *     only valid until the next phase 1 run, instead of allocating them.
+         */
+        protected List<Classifier.Recognition> runPhaseOne(boolean reuseResults) {
             // Local interpretation prototype
             final long boxStartTimeMs = SystemClock.uptimeMillis();
 
-            final List<Classifier.Recognition> results = boxDetector.recognizeImage(boxModelBitmap);
+            final List<Classifier.Recognition> results;
+            if (reuseResults) {
+                results = phaseOneResults;
+                if (boxModelInput != null) {
+                    boxDetector.recognizeImage(boxModelInput, results);
+                } else {
+                    boxDetector.recognizeImage(boxModelBitmap, results);
+                }
+            } else {
+                results = boxModelInput != null
+                        ? boxDetector.recognizeImage(boxModelInput)
+                        : boxDetector.recognizeImage(boxModelBitmap);
+            }
             Log.i(TAG, "Phase 1 processing time: " + (SystemClock.uptimeMillis() - boxStartTimeMs) + "ms");
 
-            return filterResults(BOX_MINIMUM_CONFIDENCE_TF_OD_API, results, true);
+            return filterResults(BOX_MINIMUM_CONFIDENCE_TF_OD_API, results, true,
+                    reuseResults ? mappedPhaseOneResults : new LinkedList<Classifier.Recognition>());
         }
 
         private void processImage() {
@@ -405,15 +560,15 @@ public class DetectorView extends LinearLayout implements
         protected abstract void processResult();
 
         protected List<Classifier.Recognition> filterResults(
-                float minimumConfidence, List<Classifier.Recognition> results, boolean toPreviewTransform) {
-            final List<Classifier.Recognition> mappedRecognitions = new LinkedList<>();
-            for (final Classifier.Recognition result : results) {
-                final RectF location = result.getLocation();
-                if (location != null && result.getConfidence() >= minimumConfidence) {
+                float minimumConfidence, List<Classifier.Recognition> results, boolean toPreviewTransform,
+                List<Classifier.Recognition> mappedRecognitions) {
+            mappedRecognitions.clear();
+            for (int i = 0; i < results.size(); i++) {
+                final Classifier.Recognition result = results.get(i);
+                if (result.hasLocation() && result.getConfidence() >= minimumConfidence) {
 
                     if (toPreviewTransform) {
-                        modelToImageTransform.mapRect(location);
-                        result.setLocation(location);
+                        result.mapLocation(modelToImageTransform);
                     }
                     mappedRecognitions.add(result);
                 }
@@ -483,6 +638,9 @@ public class DetectorView extends LinearLayout implements
     }
 
     public class PreviewImageListener extends ImageListener implements Camera.PreviewCallback {
+        private final PhaseOneScheduler phaseOneScheduler = new PhaseOneScheduler(
+                PHASE_ONE_SKIP_MAX_FRAME_MOTION, PHASE_ONE_SKIP_MAX_TOTAL_MOTION,
+                PHASE_ONE_SKIP_MAX_STALENESS_MS);
 
         protected void initialize() {
             imageWidth = previewSize.getWidth();
@@ -490,14 +648,28 @@ public class DetectorView extends LinearLayout implements
             super.initialize();
         }
 
+        @Override
+        protected boolean needsGreyFrame() {
+            return true;
+        }
+
         protected void processResult() {
-            IprdAdapter.Result iprdResult = iprdAdapter.isSteady(imageBitmap);
+            IprdAdapter.Result iprdResult = iprdAdapter.isSteady(greyMat);
             String failureReason = "";
             RDTTracker.RDTPreviewResult rdtResult = null;
 
             if (iprdResult.isSteady()) {
-                List<Classifier.Recognition> mappedRecognitions = runPhaseOne();
-                rdtResult = rdtTracker.extractRDTFromPreview(mappedRecognitions, imageBitmap);
+                // Shift the last detections by the measured motion instead of running phase 1
+                // when the camera has barely moved since
+                final boolean reused = !phaseOneScheduler.shouldRun(iprdResult.getMotion());
+                List<Classifier.Recognition> mappedRecognitions;
+                if (reused) {
+                    mappedRecognitions = phaseOneScheduler.getTrackedResults();
+                } else {
+                    mappedRecognitions = runPhaseOne(true);
+                    phaseOneScheduler.onPhaseOneResults(mappedRecognitions);
+                }
+                rdtResult = rdtTracker.extractRDTFromPreview(mappedRecognitions, this);
 
                 if (rdtResult == null || rdtResult.rdtOutline == null) {
                     Log.d(TAG, "RDT not found in phase 1");
@@ -505,12 +677,18 @@ public class DetectorView extends LinearLayout implements
                 } else {
                     if (rdtResult.centered) {
                         Log.d(TAG, "RDT found and is centered in phase 1");
-                        iprdAdapter.checkFrame(imageBitmap, iprdResult, rdtResult.rdtBitmap);
+                        iprdAdapter.checkFrame(getBitmap(), iprdResult, rdtResult.rdtBitmap);
                         if (iprdResult.isAccepted()) {
                             failureReason = "Good frame";
-                            if (!stillCaptureInProgress) {
+                            if (reused) {
+                                // Only capture on a fresh detection, so confirm on the next frame
+                                Log.d(TAG, "Good preview from reused phase 1 results, confirming");
+                                phaseOneScheduler.reset();
+                            } else if (!stillCaptureInProgress) {
                                 Log.d(TAG, "Have good preview frame, making single request");
                                 stillCaptureInProgress = true;
+                                // Load the phase 2 classifier while the still is captured
+                                resourceLoader.getPhase2Detector();
                                 cameraController.captureStill();
                             } else {
                                 Log.d(TAG, "Good preview, still already in progress");
@@ -534,9 +712,16 @@ public class DetectorView extends LinearLayout implements
             } else {
                 Log.d(TAG, "IPRD filter not steady");
                 failureReason = "(IPRD) not steady";
+                phaseOneScheduler.reset();
             }
 
-            String previewUri = saveImage(imageBitmap, previewFrameIndex + "_" + SystemClock.elapsedRealtime() + "_" + RDT_PREVIEW_FILE_NAME);
+            // Only convert and save the frames that JS samples
+            String previewUri = null;
+            final long nowMs = SystemClock.elapsedRealtime();
+            if (previewSampleRateMs > 0 && nowMs - lastPreviewSavedMs >= previewSampleRateMs) {
+                previewUri = saveImage(getBitmap(), previewFrameIndex + "_" + nowMs + "_" + RDT_PREVIEW_FILE_NAME);
+                lastPreviewSavedMs = nowMs;
+            }
             previewFrameIndex += 1;
             detectorListener.onRDTDetected(iprdResult, rdtResult, previewUri, previewFrameIndex, failureReason);
         }
@@ -559,16 +744,19 @@ public class DetectorView extends LinearLayout implements
         @Override
         protected void processResult() {
             Log.d(TAG, "Processing still frame");
-            List<Classifier.Recognition> mappedRecognitions = runPhaseOne();
-            RDTTracker.RDTStillFrameResult rdtResult = rdtTracker.extractRDTFromStillFrame(mappedRecognitions, imageBitmap);
+            List<Classifier.Recognition> mappedRecognitions = runPhaseOne(false);
+            RDTTracker.RDTStillFrameResult rdtResult = rdtTracker.extractRDTFromStillFrame(mappedRecognitions, getBitmap());
 
             if (rdtResult != null && rdtResult.testArea != null) {
                 Log.d(TAG, "Have good still frame (extracted test area), running inference");
 
                 detectorListener.onRDTInterpreting();
+                Classifier interpretationDetector = ResourceLoader.await(resourceLoader.getPhase2Detector());
                 final long interpretationStartTimeMs = SystemClock.uptimeMillis();
 
-                List<Classifier.Recognition> phase2ResultList = interpretationDetector.recognizeImage(rdtResult.testArea);
+                List<Classifier.Recognition> phase2ResultList = interpretationDetector == null
+                        ? new ArrayList<Classifier.Recognition>()
+                        : interpretationDetector.recognizeImage(rdtResult.testArea);
 
                 if (phase2ResultList.size() > 0) {
                     Classifier.Recognition phase2Result = phase2ResultList.get(0);
@@ -578,7 +766,7 @@ public class DetectorView extends LinearLayout implements
 
                     Log.i(TAG, "Phase 2 processing time: " + (SystemClock.uptimeMillis() - interpretationStartTimeMs) + "ms");
 
-                    interpretationResult.imageUri = saveImage(imageBitmap, RDT_PHOTO_FILE_NAME);
+                    interpretationResult.imageUri = saveImage(getBitmap(), RDT_PHOTO_FILE_NAME);
                     interpretationResult.resultWindowImageUri = saveImage(rdtResult.testArea, RDT_TEST_AREA_PHOTO_FILE_NAME);
                     if (activity.isDebug()) {
                         saveIntermediateResutls(interpretationResult);
@@ -711,5 +899,6 @@ public class DetectorView extends LinearLayout implements
         );
         void onRDTInterpreted(InterpretationResult interpretationResult);
         void onRDTInterpreting();
+        void onRDTError(String message);
     }
 }
@@ -10,6 +10,9 @@ import android.graphics.Bitmap;
 import com.iprd.rdtcamera.AcceptanceStatus;
 import com.iprd.rdtcamera.RdtAPI;
 
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+
 public class IprdAdapter {
 
   public static final String TAG = "IprdAdapter";
@@ -20,7 +23,16 @@ public class IprdAdapter {
   }
 
   public Result isSteady(Bitmap frame) {
-    return new Result(iprdApi.isSteady(frame));
+    Result result = new Result(iprdApi.isSteady(frame));
+    result.motion = iprdApi.getLastMotion();
+    return result;
+  }
+
+  /** Same as {@link #isSteady(Bitmap)} for the luma of a frame, which needs no conversion. */
+  public Result isSteady(Mat greyFrame) {
+    Result result = new Result(iprdApi.isSteady(greyFrame));
+    result.motion = iprdApi.getLastMotion();
+    return result;
   }
 
   public void checkFrame(Bitmap frame, Result iprdResult, Bitmap rdt) {
@@ -55,6 +67,7 @@ public class IprdAdapter {
     private boolean isSharp;
     private double sharpnessRaw;
     private ExposureResult exposureResult;
+    private Point motion;
 
     private Result(boolean isSteady) {
       this.isSteady = isSteady;
@@ -71,6 +84,14 @@ public class IprdAdapter {
       return isSharp;
     }
 
+    /**
+     * The translation in frame pixels since the previous frame checked for steadiness, or null
+     * if it could not be measured.
+     */
+    public Point getMotion() {
+      return motion;
+    }
+
     public double getSharpnessRaw() {
       return sharpnessRaw;
     }
@@ -27,11 +27,13 @@ public class RDTReader extends LinearLayout implements DetectorView.DetectorList
     private Activity mActivity;
     private DetectorView detectorView;
     private boolean processFrames;
+    private long previewSampleRate;
 
     public RDTReader(Context context, Activity activity) {
         super(context);
         mActivity = activity;
         processFrames = false;
+        previewSampleRate = 0;
     }
 
     public void enable() {
@@ -44,6 +46,7 @@ public class RDTReader extends LinearLayout implements DetectorView.DetectorList
                 detectorView = findViewById(R.id.detector_view);
                 detectorView.setDetectorListener(self);
                 detectorView.setProcessFrames(self.processFrames);
+                detectorView.setPreviewSampleRate(self.previewSampleRate);
                 requestLayout();
             }
         });
@@ -149,6 +152,13 @@ public class RDTReader extends LinearLayout implements DetectorView.DetectorList
         callReactCallback("RDTInterpreting", args);
     }
 
+    @Override
+    public void onRDTError(String message) {
+        WritableMap event = Arguments.createMap();
+        event.putString("message", message);
+        callReactCallback("RDTError", event);
+    }
+
 
     private WritableArray getLocationArray(float[] location) {
         WritableArray boundary = new WritableNativeArray();
@@ -203,4 +213,11 @@ public class RDTReader extends LinearLayout implements DetectorView.DetectorList
             detectorView.setProcessFrames(processFrames);
         }
     }
+
+    public void setPreviewSampleRate(long previewSampleRate) {
+        this.previewSampleRate = previewSampleRate;
+        if (detectorView != null) {
+            detectorView.setPreviewSampleRate(previewSampleRate);
+        }
+    }
 }
@@ -40,6 +40,10 @@ public class RDTReaderManager extends SimpleViewManager<RDTReader> {
                         MapBuilder.of(
                                 "phasedRegistrationNames",
                                 MapBuilder.of("bubbled", "onRDTInterpreting")))
+                .put("RDTError",
+                        MapBuilder.of(
+                                "phasedRegistrationNames",
+                                MapBuilder.of("bubbled", "onRDTError")))
                .build();
     }
 
@@ -70,4 +74,9 @@ public class RDTReaderManager extends SimpleViewManager<RDTReader> {
     public void setDoAnalysis(RDTReader view, boolean processFrames) {
         view.setProcessFrames(processFrames);
     }
+
+    @ReactProp(name = "previewSampleRate")
+    public void setPreviewSampleRate(RDTReader view, int previewSampleRate) {
+        view.setPreviewSampleRate(previewSampleRate);
+    }
 }
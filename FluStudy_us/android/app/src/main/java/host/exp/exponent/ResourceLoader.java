@@ -2,6 +2,9 @@ package host.exp.exponent;
 
 import android.content.Context;
 import android.content.res.AssetManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -10,8 +13,16 @@ import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import host.exp.exponent.tflite.Classifier;
+import host.exp.exponent.tflite.InterpreterOptionsProvider;
 import host.exp.exponent.tflite.TFLiteBaseModel;
 
 public class ResourceLoader {
@@ -20,6 +31,12 @@ public class ResourceLoader {
     private AssetManager assetManager;
     private Context applicationContext;
     private BaseLoaderCallback openCvLoaderCallback;
+    private InterpreterOptionsProvider interpreterOptionsProvider;
+    // Loads one model at a time, so phase 1 is never held up behind phase 2
+    private ThreadPoolExecutor modelExecutor;
+    private Future<Classifier> phase1Detector;
+    private Future<Classifier> phase2Detector;
+    private int phase1Attempts = 0;
     private boolean haveOpenCv = false;
 
     // Configuration values for the prepackaged SSD model.
@@ -30,10 +47,25 @@ public class ResourceLoader {
     private static final String INTERPRETATION_TF_OD_API_LABELS_FILE = "file:///android_asset/phase2-labelmap.txt";
     private static final boolean INTERPRETATION_TF_OD_API_MODEL_IS_QUANTIZED = false;
     private static final int TF_OD_API_INPUT_SIZE = 300;
+    // Loads of the phase 1 detector before giving up on it
+    private static final int MAX_PHASE1_ATTEMPTS = 3;
+    // A black image of any size, to warm up the models with
+    private static final Classifier.ImageSource BLANK_IMAGE = new Classifier.ImageSource() {
+        @Override
+        public void writePixels(int width, int height, Classifier.PixelSink sink) {
+            for (int i = 0; i < width * height; i++) {
+                sink.putPixel(i, 0);
+            }
+        }
+    };
 
     public ResourceLoader(Context context, final AssetManager assetManager) {
         applicationContext = context.getApplicationContext();
         this.assetManager = assetManager;
+        interpreterOptionsProvider = new InterpreterOptionsProvider(applicationContext);
+        modelExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        modelExecutor.allowCoreThreadTimeOut(true);
         openCvLoaderCallback = new BaseLoaderCallback(applicationContext) {
             @Override
             public void onManagerConnected(int status) {
@@ -70,7 +102,87 @@ public class ResourceLoader {
         return haveOpenCv;
     }
 
-    public Classifier loadPhase1Detector() {
+    /**
+     * Starts loading the phase 1 detector in the background if it isn't already loading.
+     * The detector has run one inference by the time the future completes, and is null if it
+     * could not be loaded.
+     */
+    public synchronized Future<Classifier> getPhase1Detector() {
+        if (phase1Detector == null) {
+            phase1Attempts++;
+            phase1Detector = modelExecutor.submit(new Callable<Classifier>() {
+                @Override
+                public Classifier call() {
+                    return warmUp(loadPhase1Detector(), "phase 1");
+                }
+            });
+        }
+        return phase1Detector;
+    }
+
+    /**
+     * Starts loading the phase 1 detector again after it could not be loaded.
+     *
+     * @return false if it has already failed too many times, in which case it isn't retried.
+     */
+    public synchronized boolean retryPhase1Detector() {
+        if (phase1Attempts >= MAX_PHASE1_ATTEMPTS) {
+            return false;
+        }
+        Log.w(TAG, "Retrying phase 1 detector, attempt " + (phase1Attempts + 1));
+        phase1Detector = null;
+        getPhase1Detector();
+        return true;
+    }
+
+    /**
+     * Same as {@link #getPhase1Detector()} for the phase 2 classifier, which is only needed once a
+     * still frame is captured.
+     */
+    public synchronized Future<Classifier> getPhase2Detector() {
+        if (phase2Detector == null) {
+            phase2Detector = modelExecutor.submit(new Callable<Classifier>() {
+                @Override
+                public Classifier call() {
+                    return warmUp(loadPhase2Detector(), "phase 2");
+                }
+            });
+        }
+        return phase2Detector;
+    }
+
+    /** Waits for a model to finish loading, returning null if it could not be loaded. */
+    public static Classifier await(Future<Classifier> detector) {
+        try {
+            return detector.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Exception loading classifier", e.getCause());
+        }
+        return null;
+    }
+
+    /** Runs a blank image through a model so that its first real inference isn't slower. */
+    private static Classifier warmUp(Classifier classifier, String phase) {
+        if (classifier != null) {
+            final long startTimeMs = SystemClock.uptimeMillis();
+            classifier.recognizeImage(BLANK_IMAGE, new ArrayList<Classifier.Recognition>());
+            Log.i(TAG, "Warmed up " + phase + " in " + (SystemClock.uptimeMillis() - startTimeMs) + "ms");
+        }
+        return classifier;
+    }
+
+    private void showToast(final String text) {
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(applicationContext, text, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private Classifier loadPhase1Detector() {
         try {
             return TFLiteBaseModel.create(
                     assetManager,
@@ -78,18 +190,17 @@ public class ResourceLoader {
                     BOX_TF_OD_API_LABELS_FILE,
                     TF_OD_API_INPUT_SIZE,
                     BOX_TF_OD_API_MODEL_IS_QUANTIZED,
-                    "phase 1");
+                    "phase 1",
+                    interpreterOptionsProvider);
         } catch (final IOException e) {
             e.printStackTrace();
             Log.e(TAG, "Exception initializing classifier!");
-            Toast toast = Toast.makeText(
-                    applicationContext, "Phase 1 Detector could not be initialized", Toast.LENGTH_SHORT);
-            toast.show();
+            showToast("Phase 1 Detector could not be initialized");
         }
         return null;
     }
 
-    public Classifier loadPhase2Detector() {
+    private Classifier loadPhase2Detector() {
         try {
             return TFLiteBaseModel.create(
                     assetManager,
@@ -97,13 +208,12 @@ public class ResourceLoader {
                     INTERPRETATION_TF_OD_API_LABELS_FILE,
                     TF_OD_API_INPUT_SIZE,
                     INTERPRETATION_TF_OD_API_MODEL_IS_QUANTIZED,
-                    "phase 2");
+                    "phase 2",
+                    interpreterOptionsProvider);
         } catch (final IOException e) {
             e.printStackTrace();
             Log.e(TAG, "Exception initializing classifier!");
-            Toast toast = Toast.makeText(
-                    applicationContext, "Phase 2 Detector could not be initialized", Toast.LENGTH_SHORT);
-            toast.show();
+            showToast("Phase 2 Detector could not be initialized");
         }
         return null;
     }
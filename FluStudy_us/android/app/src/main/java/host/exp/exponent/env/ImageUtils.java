@@ -8,6 +8,8 @@ package host.exp.exponent.env;
 import android.graphics.Matrix;
 import android.util.Log;
 
+import host.exp.exponent.tflite.Classifier;
+
 /** Utility class for manipulating images. */
 public class ImageUtils {
     private static final String TAG = "ImageUtils";
@@ -63,6 +65,55 @@ public class ImageUtils {
         }
     }
 
+    /**
+     * Converts only the pixels of a YUV_420_888 image that a smaller destination image samples,
+     * e.g. a model input, instead of the whole image. Each destination pixel takes the nearest
+     * source pixel, the same as drawing the converted image through the inverse transform
+     * without filtering.
+     *
+     * @param dstToSrc Maps destination pixel coordinates to source pixel coordinates. Must be
+     *     affine, e.g. a scale and a rotation by a multiple of 90.
+     * @param dstWidth Width of the destination image.
+     * @param dstHeight Height of the destination image.
+     * @param out Receives the ARGB pixels of the destination image, e.g. a model's input.
+     */
+    public static void convertYUV420ToARGB8888(
+            byte[] yData,
+            byte[] uData,
+            byte[] vData,
+            int width,
+            int height,
+            int yRowStride,
+            int uvRowStride,
+            int uvPixelStride,
+            Matrix dstToSrc,
+            int dstWidth,
+            int dstHeight,
+            Classifier.PixelSink out) {
+        // Find where the first pixel center lands and how far one step along each axis moves
+        final float[] points = {0.5f, 0.5f, 1.5f, 0.5f, 0.5f, 1.5f};
+        dstToSrc.mapPoints(points);
+        final float stepXx = points[2] - points[0];
+        final float stepXy = points[3] - points[1];
+        final float stepYx = points[4] - points[0];
+        final float stepYy = points[5] - points[1];
+
+        int dp = 0;
+        for (int j = 0; j < dstHeight; j++) {
+            float rowX = points[0] + j * stepYx;
+            float rowY = points[1] + j * stepYy;
+            for (int i = 0; i < dstWidth; i++) {
+                int x = (int) Math.floor(rowX + i * stepXx);
+                int y = (int) Math.floor(rowY + i * stepXy);
+                x = x < 0 ? 0 : (x >= width ? width - 1 : x);
+                y = y < 0 ? 0 : (y >= height ? height - 1 : y);
+
+                int uv_offset = uvRowStride * (y >> 1) + (x >> 1) * uvPixelStride;
+                out.putPixel(dp++, YUV2RGB(0xff & yData[yRowStride * y + x], 0xff & uData[uv_offset], 0xff & vData[uv_offset]));
+            }
+        }
+    }
+
     /**
      * Returns a transformation matrix from one reference frame into another. Handles cropping (if
      * maintaining aspect ratio is desired) and rotation.
@@ -6,6 +6,7 @@
 package host.exp.exponent.tflite;
 
 import android.graphics.Bitmap;
+import android.graphics.Matrix;
 import android.graphics.RectF;
 import java.util.List;
 
@@ -13,35 +14,104 @@ import java.util.List;
 public interface Classifier {
     List<Recognition> recognizeImage(Bitmap bitmap);
 
+    /**
+     * Recognizes an image without allocating results. The recognitions come from a pool owned by
+     * the classifier and are only valid until its next call with a results list, so copy any that
+     * need to be kept.
+     *
+     * @param results Cleared and filled with the recognitions.
+     */
+    void recognizeImage(Bitmap bitmap, List<Recognition> results);
+
+    /**
+     * Recognizes an image that writes its pixels straight into the model's input, e.g. sampled
+     * from a camera frame, so that it is never held as a Bitmap or an ARGB array.
+     */
+    List<Recognition> recognizeImage(ImageSource source);
+
+    /** Same as {@link #recognizeImage(Bitmap, List)} for an image that writes its own pixels. */
+    void recognizeImage(ImageSource source, List<Recognition> results);
+
+    /** Receives the pixels of an image one at a time. */
+    interface PixelSink {
+        /**
+         * @param index The pixel's position in the image, row by row.
+         * @param pixel The pixel's ARGB value.
+         */
+        void putPixel(int index, int pixel);
+    }
+
+    /** An image that is only produced at the size a consumer asks for. */
+    interface ImageSource {
+        /** Writes every pixel of the image at the given size into the sink. */
+        void writePixels(int width, int height, PixelSink sink);
+    }
+
     void close();
 
-    /** An immutable result returned by a Classifier describing what was recognized. */
+    /** A result returned by a Classifier describing what was recognized. */
     class Recognition {
         /**
          * A unique identifier for what has been recognized. Specific to the class, not the instance of
          * the object.
          */
-        private final String id;
+        private String id;
 
         /** Display name for the recognition. */
-        private final String title;
+        private String title;
 
         /**
          * A sortable score for how good the recognition is relative to others. Higher should be better.
          */
-        private final Float confidence;
+        private float confidence;
 
         /** Optional location within the source image for the location of the recognized object. */
         private RectF location;
 
         public Recognition(
-                final String id, final String title, final Float confidence, final RectF location) {
+                final String id, final String title, final float confidence, final RectF location) {
             this.id = id;
             this.title = title;
             this.confidence = confidence;
             this.location = location;
         }
 
+        public Recognition(final Recognition other) {
+            this(other.id, other.title, other.confidence,
+                    other.location == null ? null : new RectF(other.location));
+        }
+
+        /** Reuses a pooled recognition for a new result, keeping its location's RectF. */
+        void set(final String id, final String title, final float confidence,
+                 final float left, final float top, final float right, final float bottom) {
+            this.id = id;
+            this.title = title;
+            this.confidence = confidence;
+            if (location == null) {
+                location = new RectF(left, top, right, bottom);
+            } else {
+                location.set(left, top, right, bottom);
+            }
+        }
+
+        /** Copies another recognition into this one, keeping this one's location's RectF. */
+        public void set(final Recognition other) {
+            if (other.location == null) {
+                set(other.id, other.title, other.confidence);
+            } else {
+                set(other.id, other.title, other.confidence, other.location.left,
+                        other.location.top, other.location.right, other.location.bottom);
+            }
+        }
+
+        /** Reuses a pooled recognition for a new result without a location. */
+        void set(final String id, final String title, final float confidence) {
+            this.id = id;
+            this.title = title;
+            this.confidence = confidence;
+            this.location = null;
+        }
+
         public String getId() {
             return id;
         }
@@ -50,7 +120,7 @@ public interface Classifier {
             return title;
         }
 
-        public Float getConfidence() {
+        public float getConfidence() {
             return confidence;
         }
 
@@ -62,6 +132,17 @@ public interface Classifier {
             this.location = location;
         }
 
+        public boolean hasLocation() {
+            return location != null;
+        }
+
+        /** Transforms the location in place, e.g. from model to image coordinates. */
+        public void mapLocation(Matrix matrix) {
+            if (location != null) {
+                matrix.mapRect(location);
+            }
+        }
+
         @Override
         public String toString() {
             String resultString = "";
@@ -73,9 +154,7 @@ public interface Classifier {
                 resultString += title + " ";
             }
 
-            if (confidence != null) {
-                resultString += String.format("(%.1f%%) ", confidence * 100.0f);
-            }
+            resultString += String.format("(%.1f%%) ", confidence * 100.0f);
 
             if (location != null) {
                 resultString += location + " ";
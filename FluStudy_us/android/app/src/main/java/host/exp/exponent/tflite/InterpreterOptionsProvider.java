@@ -0,0 +1,335 @@
+// Copyright (c) 2019 by Audere
+//
+// Use of this source code is governed by an LGPL-3.0 license that
+// can be found in the LICENSE file distributed with this file.
+
+package host.exp.exponent.tflite;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Chooses how each model's Interpreter runs on this device. The first time a model is loaded, it
+ * runs with {@link Config#DEFAULT} while every candidate configuration (thread counts, with and
+ * without XNNPACK, and NNAPI where the platform has it) runs a few inferences on a blank input on
+ * a low-priority background thread. The fastest one is stored so that later loads go straight to
+ * it. The choice is redone after an app or OS update.
+ *
+ * Candidates are only timed once no model has run for {@link #IDLE_TIME_MS}, e.g. after the
+ * camera stops, and a timing that overlapped an inference is redone, so that the stored choice
+ * isn't skewed by the preview competing for the same cores. If the device stays busy, nothing is
+ * stored and the next load benchmarks again.
+ *
+ * Any configuration that fails to build or run is skipped. The process can die during a
+ * benchmark for ordinary reasons, such as a low-memory kill, so a model only falls back to
+ * {@link Config#DEFAULT} for good after {@link #MAX_BENCHMARK_ATTEMPTS} benchmarks in a row
+ * never finished.
+ */
+public class InterpreterOptionsProvider {
+    private static final String TAG = "InterpreterOptions";
+
+    private static final String PREFERENCES_NAME = "tflite_interpreter_options";
+    // Counts the benchmarks of a model that started but never finished
+    private static final String ATTEMPTS_SUFFIX = ".benchmarkAttempts";
+    private static final int MAX_BENCHMARK_ATTEMPTS = 3;
+    // Runs per candidate, after one untimed warm-up run
+    private static final int BENCHMARK_RUNS = 5;
+    private static final int MAX_THREADS = 8;
+    // How long no model may have run before a candidate is timed
+    private static final long IDLE_TIME_MS = 2000;
+    // Timings of a candidate that overlapped an inference before the benchmark gives up
+    private static final int MAX_CONTENDED_TIMINGS = 3;
+
+    // Benchmarks run one at a time, so they compete with the camera for as few cores as possible
+    private static final ExecutorService benchmarkExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "InterpreterBenchmark");
+                }
+            });
+    private static final Set<String> pendingBenchmarks = new HashSet<>();
+    private static volatile long lastInferenceTimeMs = 0;
+
+    private final SharedPreferences preferences;
+    private final String deviceKey;
+
+    /** An Interpreter configuration that can be stored as a string. */
+    public static class Config {
+        public static final Config DEFAULT = new Config(4, false, false);
+
+        public final int numThreads;
+        public final boolean useXnnpack;
+        public final boolean useNnapi;
+
+        public Config(int numThreads, boolean useXnnpack, boolean useNnapi) {
+            this.numThreads = numThreads;
+            this.useXnnpack = useXnnpack;
+            this.useNnapi = useNnapi;
+        }
+
+        public Interpreter.Options toOptions() {
+            Interpreter.Options options = new Interpreter.Options();
+            options.setNumThreads(numThreads);
+            if (useXnnpack) {
+                options.setUseXNNPACK(true);
+            }
+            if (useNnapi) {
+                options.setUseNNAPI(true);
+            }
+            return options;
+        }
+
+        static Config parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            String[] fields = value.split(":");
+            if (fields.length != 3) {
+                return null;
+            }
+            try {
+                return new Config(Integer.parseInt(fields[0]),
+                        Boolean.parseBoolean(fields[1]), Boolean.parseBoolean(fields[2]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return numThreads + ":" + useXnnpack + ":" + useNnapi;
+        }
+    }
+
+    public InterpreterOptionsProvider(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        preferences = applicationContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+        // Updates can change both the bundled models and the drivers, so key the choice on them
+        long installTime = 0;
+        try {
+            installTime = applicationContext.getPackageManager()
+                    .getPackageInfo(applicationContext.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "Unable to read the package's update time");
+        }
+        deviceKey = Build.FINGERPRINT + "@" + installTime;
+    }
+
+    /**
+     * Builds an Interpreter for a model with the fastest configuration on this device. If there
+     * is no stored choice yet, the Interpreter uses the defaults and the candidates are
+     * benchmarked in the background for the next time the model is loaded.
+     *
+     * @param model The memory-mapped model.
+     * @param modelFilename The model's asset name, which keys the stored choice.
+     */
+    public synchronized Interpreter createInterpreter(MappedByteBuffer model, String modelFilename) {
+        String key = modelFilename + "@" + deviceKey;
+        Config config = Config.parse(preferences.getString(key, null));
+
+        if (config == null) {
+            if (!isPending(key)
+                    && preferences.getInt(key + ATTEMPTS_SUFFIX, 0) >= MAX_BENCHMARK_ATTEMPTS) {
+                // The benchmark keeps dying with the process, so don't risk it again
+                Log.w(TAG, "Benchmark of " + modelFilename + " never finished, using defaults");
+                preferences.edit()
+                        .putString(key, Config.DEFAULT.toString())
+                        .remove(key + ATTEMPTS_SUFFIX)
+                        .commit();
+            } else {
+                scheduleBenchmark(model, modelFilename, key);
+            }
+            config = Config.DEFAULT;
+        }
+
+        Interpreter interpreter = tryCreate(model, config);
+        if (interpreter == null) {
+            Log.w(TAG, "Options " + config + " failed for " + modelFilename + ", using defaults");
+            preferences.edit().putString(key, Config.DEFAULT.toString()).apply();
+            interpreter = new Interpreter(model, Config.DEFAULT.toOptions());
+        }
+        return interpreter;
+    }
+
+    /**
+     * Notes that a model is running, so that no candidate is timed alongside it. Called before
+     * and after every inference outside of the benchmark.
+     */
+    public static void onInference() {
+        lastInferenceTimeMs = SystemClock.uptimeMillis();
+    }
+
+    private static boolean isPending(String key) {
+        synchronized (pendingBenchmarks) {
+            return pendingBenchmarks.contains(key);
+        }
+    }
+
+    private void scheduleBenchmark(final MappedByteBuffer model, final String modelFilename,
+                                   final String key) {
+        synchronized (pendingBenchmarks) {
+            if (!pendingBenchmarks.add(key)) {
+                return;
+            }
+        }
+        benchmarkExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int attempts = preferences.getInt(key + ATTEMPTS_SUFFIX, 0);
+                preferences.edit().putInt(key + ATTEMPTS_SUFFIX, attempts + 1).commit();
+                Config config = null;
+                try {
+                    config = benchmark(model, modelFilename);
+                } finally {
+                    // Only a benchmark that dies with the process leaves its attempt counted
+                    SharedPreferences.Editor editor = preferences.edit().remove(key + ATTEMPTS_SUFFIX);
+                    if (config != null) {
+                        editor.putString(key, config.toString());
+                    }
+                    editor.commit();
+                    synchronized (pendingBenchmarks) {
+                        pendingBenchmarks.remove(key);
+                    }
+                }
+            }
+        });
+    }
+
+    private static List<Config> getCandidates() {
+        int cores = Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS);
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int numThreads : Arrays.asList(1, 2, 4, cores)) {
+            if (numThreads <= cores && !threadCounts.contains(numThreads)) {
+                threadCounts.add(numThreads);
+            }
+        }
+
+        List<Config> candidates = new ArrayList<>();
+        for (int numThreads : threadCounts) {
+            candidates.add(new Config(numThreads, false, false));
+            candidates.add(new Config(numThreads, true, false));
+        }
+        // NNAPI before 8.1 lacks most of the operations these models use
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            candidates.add(new Config(1, false, true));
+        }
+        return candidates;
+    }
+
+    /** Returns the fastest configuration, or null if the device was never idle long enough. */
+    private static Config benchmark(MappedByteBuffer model, String modelFilename) {
+        Config best = Config.DEFAULT;
+        long bestTimeMs = Long.MAX_VALUE;
+        for (Config candidate : getCandidates()) {
+            Long timeMs = timeWhenIdle(model, candidate);
+            if (timeMs == null) {
+                Log.i(TAG, "Device too busy to benchmark " + modelFilename + ", will retry");
+                return null;
+            }
+            Log.i(TAG, modelFilename + " with " + candidate + ": " +
+                    (timeMs == Long.MAX_VALUE ? "failed" : timeMs + "ms"));
+            if (timeMs < bestTimeMs) {
+                best = candidate;
+                bestTimeMs = timeMs;
+            }
+        }
+        Log.i(TAG, "Using " + best + " for " + modelFilename);
+        return best;
+    }
+
+    /**
+     * Times a configuration while no model runs, or returns null if every timing overlapped an
+     * inference or the thread was interrupted.
+     */
+    private static Long timeWhenIdle(MappedByteBuffer model, Config config) {
+        for (int i = 0; i < MAX_CONTENDED_TIMINGS; i++) {
+            try {
+                long idleTimeMs;
+                while ((idleTimeMs = SystemClock.uptimeMillis() - lastInferenceTimeMs) < IDLE_TIME_MS) {
+                    Thread.sleep(IDLE_TIME_MS - idleTimeMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            long startInferenceTimeMs = lastInferenceTimeMs;
+            long timeMs = time(model, config);
+            if (lastInferenceTimeMs == startInferenceTimeMs) {
+                return timeMs;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the median inference time of a configuration, or Long.MAX_VALUE if it fails. */
+    private static long time(MappedByteBuffer model, Config config) {
+        Interpreter interpreter = tryCreate(model, config);
+        if (interpreter == null) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            Object[] inputs = {allocate(interpreter.getInputTensor(0).numBytes())};
+            Map<Integer, Object> outputs = new HashMap<>();
+            for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+                outputs.put(i, allocate(interpreter.getOutputTensor(i).numBytes()));
+            }
+
+            interpreter.runForMultipleInputsOutputs(inputs, outputs);
+            long[] timesMs = new long[BENCHMARK_RUNS];
+            for (int i = 0; i < BENCHMARK_RUNS; i++) {
+                long startTimeMs = SystemClock.uptimeMillis();
+                interpreter.runForMultipleInputsOutputs(inputs, outputs);
+                timesMs[i] = SystemClock.uptimeMillis() - startTimeMs;
+            }
+            Arrays.sort(timesMs);
+            return timesMs[BENCHMARK_RUNS / 2];
+        } catch (Exception e) {
+            Log.w(TAG, "Options " + config + " failed to run: " + e.toString());
+            return Long.MAX_VALUE;
+        } finally {
+            interpreter.close();
+        }
+    }
+
+    private static Interpreter tryCreate(MappedByteBuffer model, Config config) {
+        try {
+            return new Interpreter(model, config.toOptions());
+        } catch (Exception e) {
+            Log.w(TAG, "Options " + config + " failed to load: " + e.toString());
+            return null;
+        }
+    }
+
+    private static ByteBuffer allocate(int numBytes) {
+        return ByteBuffer.allocateDirect(numBytes).order(ByteOrder.nativeOrder());
+    }
+}
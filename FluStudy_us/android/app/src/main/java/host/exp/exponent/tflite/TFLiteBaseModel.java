@@ -20,6 +20,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
@@ -37,8 +38,6 @@ public abstract class TFLiteBaseModel implements Classifier {
     // Float model
     private static final float IMAGE_MEAN = 128.0f;
     private static final float IMAGE_STD = 128.0f;
-    // Number of threads in the java app
-    private static final int NUM_THREADS = 4;
     protected boolean isModelQuantized;
     // Config values.
     protected int inputSize;
@@ -47,6 +46,17 @@ public abstract class TFLiteBaseModel implements Classifier {
     protected int[] intValues;
 
     protected ByteBuffer imgData;
+    private Object[] inputArray;
+    // Recognitions handed out by recognizeImage, reused by the next call
+    private final List<Recognition> recognitionPool = new ArrayList<>();
+    private int recognitionPoolUsed = 0;
+    private final List<Recognition> pooledResults = new ArrayList<>();
+    private final PixelSink inputSink = new PixelSink() {
+        @Override
+        public void putPixel(int index, int pixel) {
+            TFLiteBaseModel.this.putPixel(index, pixel);
+        }
+    };
 
     private Interpreter tfLite;
 
@@ -58,7 +68,8 @@ public abstract class TFLiteBaseModel implements Classifier {
             final String labelFilename,
             final int inputSize,
             final boolean isQuantized,
-            final String phase)
+            final String phase,
+            final InterpreterOptionsProvider optionsProvider)
             throws IOException {
 
         InputStream labelsInput = null;
@@ -76,7 +87,10 @@ public abstract class TFLiteBaseModel implements Classifier {
         this.inputSize = inputSize;
 
         try {
-            this.tfLite = new Interpreter(loadModelFile(assetManager, modelFilename));
+            MappedByteBuffer model = loadModelFile(assetManager, modelFilename);
+            this.tfLite = optionsProvider != null
+                    ? optionsProvider.createInterpreter(model, modelFilename)
+                    : new Interpreter(model, InterpreterOptionsProvider.Config.DEFAULT.toOptions());
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -91,9 +105,9 @@ public abstract class TFLiteBaseModel implements Classifier {
         }
         this.imgData = ByteBuffer.allocateDirect(1 * this.inputSize * this.inputSize * 3 * numBytesPerChannel);
         this.imgData.order(ByteOrder.nativeOrder());
+        this.inputArray = new Object[] {this.imgData};
         this.intValues = new int[this.inputSize * this.inputSize];
 
-        this.tfLite.setNumThreads(NUM_THREADS);
         this.phase = phase;
     }
 
@@ -116,6 +130,7 @@ public abstract class TFLiteBaseModel implements Classifier {
      * @param labelFilename The filepath of label file for classes.
      * @param inputSize The size of image input
      * @param isQuantized Boolean representing model is quantized or not
+     * @param optionsProvider Chooses the Interpreter's threads and delegates, or null for defaults
      */
     public static Classifier create(
             final AssetManager assetManager,
@@ -123,56 +138,115 @@ public abstract class TFLiteBaseModel implements Classifier {
             final String labelFilename,
             final int inputSize,
             final boolean isQuantized,
-            final String phase)
+            final String phase,
+            final InterpreterOptionsProvider optionsProvider)
             throws IOException {
         if (phase == "phase 1") {
             return new TFLiteObjectDetectionAPIModel(assetManager, modelFilename, labelFilename,
-                    inputSize, isQuantized, phase);
+                    inputSize, isQuantized, phase, optionsProvider);
         } else if (phase == "phase 2") {
             return new TFLiteClassificationAPIModel(assetManager, modelFilename, labelFilename,
-                    inputSize, isQuantized, phase);
+                    inputSize, isQuantized, phase, optionsProvider);
         } else {
             throw new UnsupportedOperationException();
         }
     }
 
     @Override
-    public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    public synchronized List<Recognition> recognizeImage(final Bitmap bitmap) {
+        recognizeImage(bitmap, pooledResults);
+        return copyPooledResults();
+    }
+
+    @Override
+    public synchronized List<Recognition> recognizeImage(final ImageSource source) {
+        recognizeImage(source, pooledResults);
+        return copyPooledResults();
+    }
+
+    /** Copies the pooled results so that they outlive the next call. */
+    private List<Recognition> copyPooledResults() {
+        final List<Recognition> recognitions = new ArrayList<>(pooledResults.size());
+        for (final Recognition recognition : pooledResults) {
+            recognitions.add(new Recognition(recognition));
+        }
+        return recognitions;
+    }
+
+    @Override
+    public synchronized void recognizeImage(final Bitmap bitmap, final List<Recognition> results) {
         // Log this method so that it can be analyzed with systrace.
         Trace.beginSection("recognizeImage");
 
         Trace.beginSection("preprocessBitmap");
-        preprocessBitmap(bitmap);
+        bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        for (int i = 0; i < intValues.length; i++) {
+            putPixel(i, intValues[i]);
+        }
         Trace.endSection(); // preprocessBitmap
 
+        runInference(results);
+        Trace.endSection(); // "recognizeImage"
+    }
+
+    @Override
+    public synchronized void recognizeImage(final ImageSource source, final List<Recognition> results) {
+        Trace.beginSection("recognizeImage");
+
+        Trace.beginSection("preprocessPixels");
+        source.writePixels(inputSize, inputSize, inputSink);
+        Trace.endSection(); // preprocessPixels
+
+        runInference(results);
+        Trace.endSection(); // "recognizeImage"
+    }
+
+    /** Runs the model on the input buffer and fills the results from the pool. */
+    private void runInference(final List<Recognition> results) {
         // Copy the input data into TensorFlow.
         Trace.beginSection("feed");
-        Object[] inputArray = {imgData};
         Map<Integer, Object> outputMap = getOutputMap();
         Trace.endSection();
 
         // Run the inference call.
         Trace.beginSection("run " + phase);
+        InterpreterOptionsProvider.onInference();
         tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
+        InterpreterOptionsProvider.onInference();
         Trace.endSection();
 
         // Show the best detections.
         // after scaling them back to the input size.
-        List<Recognition> recognitions = getRecognitions();
-        Trace.endSection(); // "recognizeImage"
+        results.clear();
+        recognitionPoolUsed = 0;
+        getRecognitions(results);
+    }
 
-        return recognitions;
+    /** Takes a recognition from the pool for the current call's results. */
+    protected Recognition obtainRecognition() {
+        if (recognitionPoolUsed == recognitionPool.size()) {
+            recognitionPool.add(new Recognition(null, null, 0, null));
+        }
+        return recognitionPool.get(recognitionPoolUsed++);
     }
 
     protected boolean inRange(float number, float max, float min) {
         return number < max && number >= min;
     }
 
-    protected abstract void preprocessBitmap(Bitmap bitmap);
+    /**
+     * Writes one pixel of an image at the model's input size into {@link #imgData}.
+     *
+     * @param index The pixel's position in the image, row by row.
+     * @param pixelValue The pixel's ARGB value.
+     */
+    protected abstract void putPixel(int index, int pixelValue);
 
+    /** Returns the output buffers, which are allocated once and reused by every inference. */
     protected abstract Map<Integer, Object> getOutputMap();
 
-    protected abstract List<Recognition> getRecognitions();
+    /** Adds the recognitions from the output buffers, taking them from {@link #obtainRecognition}. */
+    protected abstract void getRecognitions(List<Recognition> recognitions);
 
     @Override
     public void close() {}
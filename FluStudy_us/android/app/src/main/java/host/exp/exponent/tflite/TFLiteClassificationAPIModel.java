@@ -6,10 +6,8 @@
 package host.exp.exponent.tflite;
 
 import android.content.res.AssetManager;
-import android.graphics.Bitmap;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,7 +24,11 @@ public class TFLiteClassificationAPIModel extends TFLiteBaseModel {
     // Float model
     private static final float[] IMAGENET_MEAN = {0.485f, 0.456f, 0.406f};
     private static final float[] IMAGENET_STD = {0.229f, 0.224f, 0.225f};
-    private float[][] outputScores;
+    private final float[][] outputScores = new float[1][NUM_CLASSES];
+    private final double[] probabilities = new double[NUM_CLASSES];
+    private final Map<Integer, Object> outputMap = new HashMap<>();
+    // Byte offset of each channel's plane in the input
+    private final int[] channelOffsets;
 
     public TFLiteClassificationAPIModel(
             final AssetManager assetManager,
@@ -34,50 +36,39 @@ public class TFLiteClassificationAPIModel extends TFLiteBaseModel {
             final String labelFilename,
             final int inputSize,
             final boolean isQuantized,
-            final String phase)
+            final String phase,
+            final InterpreterOptionsProvider optionsProvider)
             throws IOException {
-        super(assetManager, modelFilename, labelFilename, inputSize, isQuantized, phase);
+        super(assetManager, modelFilename, labelFilename, inputSize, isQuantized, phase, optionsProvider);
+        outputMap.put(0, outputScores);
+        int nBytes = isModelQuantized ? 1 : 4;
+        channelOffsets = new int[] {0, inputSize * inputSize * nBytes, 2 * inputSize * inputSize * nBytes};
     }
 
     @Override
-    protected void preprocessBitmap(Bitmap bitmap) {
+    protected void putPixel(int index, int pixelValue) {
         // Preprocess the image data from 0-255 int to normalized float based
         // on the provided parameters.
-        bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-
-        // precomputed channel offsets
-        int nBytes = isModelQuantized ? 1 : 4;
-        int[] channelOffsets = {0, inputSize * inputSize * nBytes, 2 * inputSize * inputSize*nBytes};
-        for (int i = 0, pixel = 0; i < inputSize; ++i) {
-            for (int j = 0; j < inputSize; ++j) {
-                int rowColOffset = pixel * nBytes;
-                int pixelValue = intValues[pixel++];
-                for (int k = 0, bits=16; k<3; k++, bits-=8) {
-                    // tflite classifcation model converted from pytorch uses channel first format
-                    int offset = channelOffsets[k] + rowColOffset;
-                    if (isModelQuantized) {
-                        // quantized model
-                        imgData.put(offset, (byte) ((pixelValue >> bits) & 0xFF));
-                    } else {
-                        // float model: convert [0, 255] to [0., 1.], then normalized by ImageNet MEAN and STD
-                        imgData.putFloat(offset, (((pixelValue >> bits) & 0xFF) / 255.0f- IMAGENET_MEAN[k]) / IMAGENET_STD[k]);
-                    }
-                }
+        int rowColOffset = index * (isModelQuantized ? 1 : 4);
+        for (int k = 0, bits=16; k<3; k++, bits-=8) {
+            // tflite classifcation model converted from pytorch uses channel first format
+            int offset = channelOffsets[k] + rowColOffset;
+            if (isModelQuantized) {
+                // quantized model
+                imgData.put(offset, (byte) ((pixelValue >> bits) & 0xFF));
+            } else {
+                // float model: convert [0, 255] to [0., 1.], then normalized by ImageNet MEAN and STD
+                imgData.putFloat(offset, (((pixelValue >> bits) & 0xFF) / 255.0f- IMAGENET_MEAN[k]) / IMAGENET_STD[k]);
             }
         }
     }
 
     @Override
     protected Map<Integer, Object> getOutputMap() {
-        outputScores = new float[1][NUM_CLASSES];
-
-        Map<Integer, Object> outputMap = new HashMap<>();
-        outputMap.put(0, outputScores);
         return outputMap;
     }
 
-    private static double[] softmax(float[] input) {
-        double[] output = new double[input.length];
+    private static void softmax(float[] input, double[] output) {
         double sum = 0;
         for (int i=0; i<output.length; i++) {
             output[i] = Math.exp(input[i]);
@@ -86,14 +77,12 @@ public class TFLiteClassificationAPIModel extends TFLiteBaseModel {
         for (int i=0; i<output.length; i++) {
             output[i] /= sum;
         }
-        return output;
     }
 
     @Override
-    protected List<Recognition> getRecognitions() {
-        final List<Recognition> recognitions = new ArrayList<>(1);
+    protected void getRecognitions(List<Recognition> recognitions) {
         // Convert to probabilities using softmax
-        double[] probabilities = softmax(outputScores[0]);
+        softmax(outputScores[0], probabilities);
         // pred is the class idx with maximum probability
         int pred = 0;
         for (int i=1; i<probabilities.length; i++) {
@@ -101,11 +90,11 @@ public class TFLiteClassificationAPIModel extends TFLiteBaseModel {
                 pred = i;
             }
         }
-        recognitions.add(new Recognition(
+        final Recognition recognition = obtainRecognition();
+        recognition.set(
                 "0",
                 labels.get(pred),
-                (float)probabilities[pred],
-                null));
-        return recognitions;
+                (float)probabilities[pred]);
+        recognitions.add(recognition);
     }
 }
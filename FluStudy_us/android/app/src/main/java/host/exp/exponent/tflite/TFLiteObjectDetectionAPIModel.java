@@ -7,8 +7,6 @@ package host.exp.exponent.tflite;
 
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
-import android.graphics.Bitmap;
-import android.graphics.RectF;
 import android.os.Trace;
 import android.util.Log;
 
@@ -23,7 +21,6 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,16 +41,24 @@ public class TFLiteObjectDetectionAPIModel extends TFLiteBaseModel {
     private static final float IMAGE_STD = 128.0f;
     // outputLocations: array of shape [Batchsize, NUM_DETECTIONS,4]
     // contains the location of detected boxes
-    private float[][][] outputLocations;
+    private final float[][][] outputLocations = new float[1][NUM_DETECTIONS][4];
     // outputClasses: array of shape [Batchsize, NUM_DETECTIONS]
     // contains the classes of detected boxes
-    private float[][] outputClasses;
+    private final float[][] outputClasses = new float[1][NUM_DETECTIONS];
     // outputScores: array of shape [Batchsize, NUM_DETECTIONS]
     // contains the scores of detected boxes
-    private float[][] outputScores;
+    private final float[][] outputScores = new float[1][NUM_DETECTIONS];
     // numDetections: array of shape [Batchsize]
     // contains the number of detected boxes
-    private float[] numDetections;
+    private final float[] numDetections = new float[1];
+    private final Map<Integer, Object> outputMap = new HashMap<>();
+    // Recognition ids, so that they are not formatted for every detection
+    private static final String[] IDS = new String[NUM_DETECTIONS];
+    static {
+        for (int i = 0; i < NUM_DETECTIONS; ++i) {
+            IDS[i] = "" + i;
+        }
+    }
 
     public TFLiteObjectDetectionAPIModel(
             final AssetManager assetManager,
@@ -61,75 +66,60 @@ public class TFLiteObjectDetectionAPIModel extends TFLiteBaseModel {
             final String labelFilename,
             final int inputSize,
             final boolean isQuantized,
-            final String phase)
+            final String phase,
+            final InterpreterOptionsProvider optionsProvider)
             throws IOException {
-        super(assetManager, modelFilename, labelFilename, inputSize, isQuantized, phase);
+        super(assetManager, modelFilename, labelFilename, inputSize, isQuantized, phase, optionsProvider);
+        outputMap.put(0, outputLocations);
+        outputMap.put(1, outputClasses);
+        outputMap.put(2, outputScores);
+        outputMap.put(3, numDetections);
     }
 
     @Override
-    protected void preprocessBitmap(Bitmap bitmap) {
+    protected void putPixel(int index, int pixelValue) {
         // Preprocess the image data from 0-255 int to normalized float based
         // on the provided parameters.
-        bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-
-        imgData.rewind();
-        for (int i = 0, pixel = 0; i < inputSize; ++i) {
-            for (int j = 0; j < inputSize; ++j) {
-                int pixelValue = intValues[pixel++];
-                if (isModelQuantized) {
-                    // Quantized model
-                    imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-                    imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-                    imgData.put((byte) (pixelValue & 0xFF));
-                } else { // Float model
-                    imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-                    imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-                    imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-                }
-            }
+        if (isModelQuantized) {
+            // Quantized model
+            int offset = index * 3;
+            imgData.put(offset, (byte) ((pixelValue >> 16) & 0xFF));
+            imgData.put(offset + 1, (byte) ((pixelValue >> 8) & 0xFF));
+            imgData.put(offset + 2, (byte) (pixelValue & 0xFF));
+        } else { // Float model
+            int offset = index * 12;
+            imgData.putFloat(offset, (((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
+            imgData.putFloat(offset + 4, (((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
+            imgData.putFloat(offset + 8, ((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
         }
     }
 
     @Override
     protected Map<Integer, Object> getOutputMap() {
-        outputLocations = new float[1][NUM_DETECTIONS][4];
-        outputClasses = new float[1][NUM_DETECTIONS];
-        outputScores = new float[1][NUM_DETECTIONS];
-        numDetections = new float[1];
-
-        Map<Integer, Object> outputMap = new HashMap<>();
-        outputMap.put(0, outputLocations);
-        outputMap.put(1, outputClasses);
-        outputMap.put(2, outputScores);
-        outputMap.put(3, numDetections);
         return outputMap;
     }
 
     @Override
-    protected List<Recognition> getRecognitions() {
-        final List<Recognition> recognitions = new ArrayList<>(NUM_DETECTIONS);
+    protected void getRecognitions(List<Recognition> recognitions) {
         for (int i = 0; i < NUM_DETECTIONS; ++i) {
-            final RectF detection =
-                    new RectF(
-                            outputLocations[0][i][1] * inputSize,
-                            outputLocations[0][i][0] * inputSize,
-                            outputLocations[0][i][3] * inputSize,
-                            outputLocations[0][i][2] * inputSize);
             // SSD Mobilenet V1 Model assumes class 0 is background class
             // in label file and class labels start from 1 to number_of_classes+1,
             // while outputClasses correspond to class index from 0 to number_of_classes
             int labelOffset = 1;
             int classLabel = (int) outputClasses[0][i] + labelOffset;
             if (inRange(classLabel, labels.size(), 0) && inRange(outputScores[0][i], 1, 0)) {
-                recognitions.add(
-                        new Recognition(
-                                "" + i,
-                                labels.get(classLabel),
-                                outputScores[0][i],
-                                detection));
+                final Recognition recognition = obtainRecognition();
+                recognition.set(
+                        IDS[i],
+                        labels.get(classLabel),
+                        outputScores[0][i],
+                        outputLocations[0][i][1] * inputSize,
+                        outputLocations[0][i][0] * inputSize,
+                        outputLocations[0][i][3] * inputSize,
+                        outputLocations[0][i][2] * inputSize);
+                recognitions.add(recognition);
             }
         }
-        return recognitions;
     }
 
     @Override
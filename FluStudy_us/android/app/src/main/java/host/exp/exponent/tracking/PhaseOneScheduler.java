@@ -0,0 +1,114 @@
+// Copyright (c) 2019 by Audere
+//
+// Use of this source code is governed by an LGPL-3.0 license that
+// can be found in the LICENSE file distributed with this file.
+
+package host.exp.exponent.tracking;
+
+import android.graphics.Matrix;
+import android.os.SystemClock;
+
+import org.opencv.core.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import host.exp.exponent.tflite.Classifier;
+
+/**
+ * Decides when a preview frame can skip the phase 1 detector. While the camera barely moves, the
+ * last detections are reused, shifted by the motion measured since they were made, until they
+ * are older than the maximum staleness.
+ */
+public class PhaseOneScheduler {
+    private final float maxFrameMotion;
+    private final float maxTotalMotion;
+    private final long maxStalenessMs;
+
+    // The lists hold recognitions from the pools, which are reused so that skipped frames,
+    // the cheapest path, allocate nothing
+    private final List<Classifier.Recognition> lastPool = new ArrayList<>();
+    private final List<Classifier.Recognition> lastResults = new ArrayList<>();
+    private final List<Classifier.Recognition> trackedPool = new ArrayList<>();
+    private final List<Classifier.Recognition> trackedResults = new ArrayList<>();
+    private final Matrix motionTransform = new Matrix();
+    private boolean haveResults = false;
+    private long lastRunTimeMs;
+    private double totalMotionX;
+    private double totalMotionY;
+
+    /**
+     * @param maxFrameMotion The largest motion in frame pixels between two frames that still
+     *     counts as nothing having changed.
+     * @param maxTotalMotion The largest motion in frame pixels since phase 1 last ran that the
+     *     shifted detections are trusted for.
+     * @param maxStalenessMs How long the detections are reused before phase 1 runs regardless.
+     */
+    public PhaseOneScheduler(float maxFrameMotion, float maxTotalMotion, long maxStalenessMs) {
+        this.maxFrameMotion = maxFrameMotion;
+        this.maxTotalMotion = maxTotalMotion;
+        this.maxStalenessMs = maxStalenessMs;
+    }
+
+    /**
+     * Adds a frame's motion and decides whether phase 1 has to run on it.
+     *
+     * @param motion The translation since the previous frame, or null if it is unknown.
+     */
+    public boolean shouldRun(Point motion) {
+        if (!haveResults || motion == null) {
+            return true;
+        }
+        totalMotionX += motion.x;
+        totalMotionY += motion.y;
+        return Math.hypot(motion.x, motion.y) > maxFrameMotion
+                || Math.hypot(totalMotionX, totalMotionY) > maxTotalMotion
+                || SystemClock.uptimeMillis() - lastRunTimeMs > maxStalenessMs;
+    }
+
+    /**
+     * Keeps the detections phase 1 just made, in frame coordinates, for the frames that follow.
+     */
+    public void onPhaseOneResults(List<Classifier.Recognition> results) {
+        copyResults(results, lastPool, lastResults);
+        haveResults = true;
+        lastRunTimeMs = SystemClock.uptimeMillis();
+        totalMotionX = 0;
+        totalMotionY = 0;
+    }
+
+    /**
+     * Returns the last detections shifted by the motion since they were made. They stay valid
+     * until the next call.
+     */
+    public List<Classifier.Recognition> getTrackedResults() {
+        copyResults(lastResults, trackedPool, trackedResults);
+        motionTransform.setTranslate((float) totalMotionX, (float) totalMotionY);
+        for (int i = 0; i < trackedResults.size(); i++) {
+            trackedResults.get(i).mapLocation(motionTransform);
+        }
+        return trackedResults;
+    }
+
+    /** Copies recognitions into ones taken from a pool, growing the pool as needed. */
+    private static void copyResults(List<Classifier.Recognition> from,
+                                    List<Classifier.Recognition> pool,
+                                    List<Classifier.Recognition> to) {
+        to.clear();
+        for (int i = 0; i < from.size(); i++) {
+            if (i == pool.size()) {
+                pool.add(new Classifier.Recognition(null, null, 0, null));
+            }
+            final Classifier.Recognition recognition = pool.get(i);
+            recognition.set(from.get(i));
+            to.add(recognition);
+        }
+    }
+
+    /** Makes the next frame run phase 1, e.g. after frames whose motion wasn't measured. */
+    public void reset() {
+        haveResults = false;
+        lastResults.clear();
+        trackedResults.clear();
+    }
+}
@@ -82,7 +82,7 @@ public class RDTTracker {
         return true;
     }
 
-    private RDTResult extractRDT(final List<Classifier.Recognition> results, final Bitmap previewBitmap, boolean isHighRes) {
+    private RDTResult extractRDT(final List<Classifier.Recognition> results, final FrameSource frame, boolean isHighRes) {
         // TODO: make more strict regarding how good the current results have to be
         final Classifier.Recognition[] findings = this.rdtLocations(results);
 
@@ -119,6 +119,7 @@ public class RDTTracker {
         float scaleToCanvasFromRdt = this.scaleToCanvasFromRdt();
         int rdtCanvasWidth = (int) (RDT_WIDTH * scaleToCanvasFromRdt);
         int rdtCanvasHeight = (int) (RDT_HEIGHT * scaleToCanvasFromRdt);
+        final Bitmap previewBitmap = frame.getBitmap();
         Bitmap rdtBitmap = extractBitmap(previewBitmap, rdtCanvasWidth, rdtCanvasHeight, rdtImageMatrix);
 
         if (isHighRes) {
@@ -136,14 +137,28 @@ public class RDTTracker {
         }
     }
 
+    /**
+     * @param frame Only asked for the frame's Bitmap if the results locate an RDT, so that
+     *     frames without one are never converted.
+     */
     public RDTPreviewResult extractRDTFromPreview(final List<Classifier.Recognition> results,
-                                                  final Bitmap previewBitmap) {
-        return (RDTPreviewResult) extractRDT(results, previewBitmap, false);
+                                                  final FrameSource frame) {
+        return (RDTPreviewResult) extractRDT(results, frame, false);
     }
 
     public RDTStillFrameResult extractRDTFromStillFrame(final List<Classifier.Recognition> results,
                                                         final Bitmap previewBitmap) {
-        return (RDTStillFrameResult) extractRDT(results, previewBitmap, true);
+        return (RDTStillFrameResult) extractRDT(results, new FrameSource() {
+            @Override
+            public Bitmap getBitmap() {
+                return previewBitmap;
+            }
+        }, true);
+    }
+
+    /** A camera frame that is only converted to a Bitmap when it is needed. */
+    public interface FrameSource {
+        Bitmap getBitmap();
     }
 
     private float scaleToCanvasFromRdt() {
@@ -6,7 +6,7 @@ const NativeRDTReader = requireNativeComponent("RDTReader");
 
 type InternalRDTCapturedArgs = {
   imageUri: string;
-  previewUri: string;
+  previewUri?: string;
   previewFrameIndex: number;
   resultWindowImageUri: string;
   testStripDetected: boolean;
@@ -27,7 +27,7 @@ type InternalRDTCapturedArgs = {
 
 export type RDTCapturedArgs = {
   imageUri: string;
-  previewUri: string;
+  previewUri?: string;
   previewFrameIndex: number;
   resultWindowImageUri: string;
   testStripDetected: boolean;
@@ -57,10 +57,15 @@ export type RDTInterpretingArgs = {
   timeTaken: number;
 };
 
+export type RDTErrorArgs = {
+  message: string;
+};
+
 type RDTReaderProps = {
   onRDTCaptured: (args: RDTCapturedArgs) => void;
   onRDTCameraReady: (args: RDTCameraReadyArgs) => void;
   onRDTInterpreting?: (args: RDTInterpretingArgs) => void;
+  onRDTError?: (args: RDTErrorArgs) => void;
   enabled: boolean;
   flashEnabled: boolean;
   demoMode: boolean;
@@ -68,6 +73,7 @@ type RDTReaderProps = {
   frameImageScale: number;
   appState: string;
   processFrames: boolean;
+  previewSampleRate?: number;
   style: any;
 };
 
@@ -108,6 +114,12 @@ export class RDTReader extends React.Component<RDTReaderProps> {
     }
   };
 
+  _onRDTError = (event: any) => {
+    if (this.props.onRDTError) {
+      this.props.onRDTError(event.nativeEvent);
+    }
+  };
+
   render() {
     return (
       <NativeRDTReader
@@ -115,6 +127,7 @@ export class RDTReader extends React.Component<RDTReaderProps> {
         onRDTCaptured={this._onRDTCaptured}
         onRDTCameraReady={this._onRDTCameraReady}
         onRDTInterpreting={this._onRDTInterpreting}
+        onRDTError={this._onRDTError}
       />
     );
   }
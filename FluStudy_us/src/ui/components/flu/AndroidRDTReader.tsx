@@ -44,6 +44,7 @@ import {
   RDTCapturedArgs,
   RDTCameraReadyArgs,
   RDTInterpretingArgs,
+  RDTErrorArgs,
 } from "../../../native/rdtReader";
 import {
   RDTReaderResult,
@@ -61,7 +62,7 @@ import {
   SMALL_TEXT,
   THICK_BORDER_WIDTH,
 } from "../../styles";
-import { uploadFile, deleteFile } from "../../../store";
+import { uploadFile } from "../../../store";
 import {
   logFirebaseEvent,
   AppEvents,
@@ -175,7 +176,6 @@ class AndroidRDTReader extends React.Component<Props & WithNamespaces, State> {
   _instructionTimer: NodeJS.Timeout | null | undefined;
   _instructionLastUpdate: number = 0;
   _lastRDTReaderResult?: RDTReaderResult;
-  _lastPreviewSaved: number = 0;
   _previewFrames: RDTReaderResult[] = [];
   _rdtRect: any = null;
 
@@ -348,36 +348,40 @@ class AndroidRDTReader extends React.Component<Props & WithNamespaces, State> {
     this._clearTimer();
     // Timeout after 30 seconds
     this._timer = global.setTimeout(() => {
-      const { dispatch, fallback, isFocused, navigation } = this.props;
-      if (!this.state.rdtInterpreting && isFocused) {
+      if (!this.state.rdtInterpreting && this.props.isFocused) {
         logFirebaseEvent(AppEvents.RDT_TIMEOUT);
-        dispatch(setRDTCaptureTime(false));
-        dispatch(setShownRDTFailWarning(false));
-        navigation.dispatch(
-          StackActions.push({
-            routeName: fallback,
-            params: {
-              supportsTorchMode: this.state.supportsTorchMode,
-            },
-          })
-        );
-        dispatch(setRDTPhoto(""));
-        dispatch(setRDTPhotoHC(""));
-        dispatch(
-          setRDTReaderResult(
-            this._lastRDTReaderResult || { testStripDetected: false }
-          )
-        );
-        dispatch(
-          setRDTCaptureInfo(
-            this.state.supportsTorchMode && this.state.flashEnabled,
-            this.state.legacyCameraApi
-          )
-        );
+        this._goToFallback();
       }
     }, getRemoteConfig("rdtTimeoutSeconds") * 1000);
   }
 
+  _goToFallback() {
+    const { dispatch, fallback, navigation } = this.props;
+    dispatch(setRDTCaptureTime(false));
+    dispatch(setShownRDTFailWarning(false));
+    navigation.dispatch(
+      StackActions.push({
+        routeName: fallback,
+        params: {
+          supportsTorchMode: this.state.supportsTorchMode,
+        },
+      })
+    );
+    dispatch(setRDTPhoto(""));
+    dispatch(setRDTPhotoHC(""));
+    dispatch(
+      setRDTReaderResult(
+        this._lastRDTReaderResult || { testStripDetected: false }
+      )
+    );
+    dispatch(
+      setRDTCaptureInfo(
+        this.state.supportsTorchMode && this.state.flashEnabled,
+        this.state.legacyCameraApi
+      )
+    );
+  }
+
   _clearTimer() {
     if (this._timer != null) {
       clearTimeout(this._timer);
@@ -555,24 +559,31 @@ class AndroidRDTReader extends React.Component<Props & WithNamespaces, State> {
     this.setState({ rdtInterpreting: true, failureReason: "Interpreting..." });
   };
 
+  _onRDTError = (args: RDTErrorArgs) => {
+    // The reader can't process frames, so don't wait for the timeout
+    logFirebaseEvent(AppHealthEvents.RDT_READER_ERROR, {
+      message: args.message,
+    });
+    if (this.props.isFocused) {
+      this._handleWillBlur();
+      this._goToFallback();
+    }
+  };
+
   _logPreviewFrameData = async (args: RDTCapturedArgs) => {
     const rdtResult = rdtCapturedArgsToResult(args);
 
-    const now = Date.now();
-    const upload =
-      this._sampleRate > 0 && now - this._lastPreviewSaved >= this._sampleRate;
+    // The reader only saves the preview frames that are sampled for upload
+    const upload = !!args.previewUri;
 
     rdtResult.photoUploaded = upload;
     rdtResult.previewSampleRate = this._sampleRate;
     rdtResult.uiMessage = this.state.instructionMsg;
 
-    if (upload) {
+    if (args.previewUri) {
       const previewPhotoId = "preview_" + (await newUID()) + ".jpeg";
       rdtResult.previewPhotoId = previewPhotoId;
       uploadFile(rdtResult.previewPhotoId, args.previewUri, true);
-      this._lastPreviewSaved = now;
-    } else {
-      deleteFile(args.previewUri);
     }
 
     this._lastRDTReaderResult = rdtResult;
@@ -964,6 +975,7 @@ class AndroidRDTReader extends React.Component<Props & WithNamespaces, State> {
           onRDTCaptured={this._onRDTCaptured}
           onRDTCameraReady={this._cameraReady}
           onRDTInterpreting={this._onRDTInterpreting}
+          onRDTError={this._onRDTError}
           enabled={isFocused}
           showDefaultViewfinder={false}
           demoMode={isDemo}
@@ -971,6 +983,7 @@ class AndroidRDTReader extends React.Component<Props & WithNamespaces, State> {
           frameImageScale={1}
           appState={this.state.appState}
           processFrames={this.state.processFrames}
+          previewSampleRate={this._sampleRate}
         />
         <View style={styles.overlayContainer}>
           <View style={{ flex: 1 }}>